@@ -0,0 +1,328 @@
+package benchmark;
+
+import java.awt.Point;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Random;
+
+import model.Pathfinding;
+
+/**
+ * Measures Pathfinding.findPath so changes to it can be compared. Every
+ * diagonal level, with and without the heuristic, on the shipped levels and
+ * on generated open, sparse and maze boards from 32x32 to 2048x2048.
+ *
+ * For each case it runs a fixed set of queries over and over: a few warmup
+ * rounds, then measured rounds of a set length. It reports operations per
+ * second (mean and spread over the rounds) and bytes allocated per operation,
+ * read off the thread's allocation counter, so regressions in speed and in
+ * garbage both show up.
+ *
+ * Build and run from the project folder:
+ *   javac -d out $(find src bench -name '*.java')
+ *   java -cp out benchmark.PathfindingBench [options]
+ *
+ * Options:
+ *   -levels dir   folder of level folders to load (src/levels)
+ *   -grid name    only boards whose name contains this
+ *   -max n        largest generated board side (2048)
+ *   -warmup n     warmup rounds per case (2)
+ *   -rounds n     measured rounds per case (5)
+ *   -time ms      length of each round (200)
+ */
+public class PathfindingBench {
+    private static final int QUERIES = 64;
+    private static final int[] SIZES = {32, 128, 512, 2048};
+
+    private String levelsDir = "src/levels";
+    private String filter = "";
+    private int maxSize = 2048;
+    private int warmup = 2;
+    private int rounds = 5;
+    private long roundNanos = 200*1000000L;
+
+    /** keeps the results in use so the searches can't be skipped */
+    private long sink;
+
+    /**
+     * A board and the queries run on it
+     */
+    private static class Grid {
+        String name;
+        boolean[][] walls;
+        Point[] starts = new Point[QUERIES];
+        Point[] ends = new Point[QUERIES];
+
+        Grid(String name, boolean[][] walls, Random random) {
+            this.name = name;
+            this.walls = walls;
+            for(int i=0;i<QUERIES;i++){
+                starts[i] = randomOpen(walls, random);
+                ends[i] = randomOpen(walls, random);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        PathfindingBench bench = new PathfindingBench();
+        for(int i=0;i+1<args.length;i+=2){
+            String value = args[i+1];
+            if(args[i].equals("-levels")){
+                bench.levelsDir = value;
+            }else if(args[i].equals("-grid")){
+                bench.filter = value;
+            }else if(args[i].equals("-max")){
+                bench.maxSize = Integer.parseInt(value);
+            }else if(args[i].equals("-warmup")){
+                bench.warmup = Integer.parseInt(value);
+            }else if(args[i].equals("-rounds")){
+                bench.rounds = Integer.parseInt(value);
+            }else if(args[i].equals("-time")){
+                bench.roundNanos = Long.parseLong(value)*1000000L;
+            }else{
+                System.err.println("Unknown option "+args[i]);
+            }
+        }
+        bench.run();
+    }
+
+    private void run(){
+        Random random = new Random(42);
+        ArrayList<Grid> grids = new ArrayList<Grid>();
+        for(File level : levelFiles()){
+            boolean[][] walls = readLevel(level);
+            if(walls != null){
+                grids.add(new Grid(level.getParentFile().getName(), walls, random));
+            }
+        }
+        for(int size : SIZES){
+            if(size > maxSize) continue;
+            grids.add(new Grid("open"+size, open(size), random));
+            grids.add(new Grid("sparse"+size, sparse(size, random), random));
+            grids.add(new Grid("maze"+size, maze(size, random), random));
+        }
+
+        if(allocatedBytes() < 0){
+            System.out.println("(this JVM does not count allocations, B/op is left blank)");
+        }
+        System.out.println(String.format("%-16s %9s %5s %4s %14s %10s %12s",
+                "board", "size", "heur", "diag", "ops/s", "+-", "B/op"));
+        for(Grid grid : grids){
+            if(!grid.name.contains(filter)) continue;
+            for(boolean heuristic : new boolean[]{true, false}){
+                for(int diag=0;diag<4;diag++){
+                    measure(grid, heuristic, diag);
+                }
+            }
+        }
+        System.out.println("checksum "+sink);
+    }
+
+    /**
+     * Runs one case and prints its line
+     */
+    private void measure(Grid grid, boolean heuristic, int diag){
+        for(int i=0;i<warmup;i++){
+            round(grid, heuristic, diag);
+        }
+        double[] rates = new double[rounds];
+        long totalOps = 0;
+        long totalBytes = 0;
+        for(int i=0;i<rounds;i++){
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            long ops = round(grid, heuristic, diag);
+            long elapsed = System.nanoTime() - start;
+            totalBytes += allocatedBytes() - bytes;
+            totalOps += ops;
+            rates[i] = ops*1e9/elapsed;
+        }
+
+        double mean = 0;
+        for(double rate : rates){
+            mean += rate;
+        }
+        mean /= rates.length;
+        double spread = 0;
+        for(double rate : rates){
+            spread += (rate - mean)*(rate - mean);
+        }
+        spread = rates.length > 1 ? Math.sqrt(spread/(rates.length - 1)) : 0;
+        String perOp = allocatedBytes() < 0 ? "" : String.valueOf(totalBytes/Math.max(1, totalOps));
+
+        System.out.println(String.format("%-16s %9s %5s %4d %14.1f %10.1f %12s",
+                grid.name, grid.walls.length+"x"+grid.walls[0].length, heuristic, diag, mean, spread, perOp));
+    }
+
+    /**
+     * Runs the queries round robin until the round's time is up, and
+     * always at least once
+     * @return Number of queries run
+     */
+    private long round(Grid grid, boolean heuristic, int diag){
+        long ops = 0;
+        long start = System.nanoTime();
+        int q = 0;
+        do{
+            LinkedList<Point> path = Pathfinding.findPath(grid.walls, grid.starts[q], grid.ends[q], heuristic, diag);
+            sink += path == null ? -1 : path.size();
+            ops++;
+            q = (q + 1) % QUERIES;
+        }while(System.nanoTime() - start < roundNanos);
+        return ops;
+    }
+
+    /**
+     * Bytes this thread has allocated so far, or -1 if the JVM can't tell
+     */
+    private static long allocatedBytes(){
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(threads instanceof com.sun.management.ThreadMXBean){
+            com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) threads;
+            if(counting.isThreadAllocatedMemorySupported() && counting.isThreadAllocatedMemoryEnabled()){
+                return counting.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The foreground file of every level folder, by folder name
+     */
+    private File[] levelFiles(){
+        ArrayList<File> result = new ArrayList<File>();
+        File[] dirs = new File(levelsDir).listFiles();
+        if(dirs == null){
+            System.err.println("No levels found in "+levelsDir);
+            return new File[0];
+        }
+        Arrays.sort(dirs);
+        for(File dir : dirs){
+            if(!dir.isDirectory()) continue;
+            File[] files = dir.listFiles();
+            Arrays.sort(files);
+            for(File file : files){
+                if(file.getName().endsWith("fg.txt")){
+                    result.add(file);
+                }
+            }
+        }
+        return result.toArray(new File[result.size()]);
+    }
+
+    /**
+     * Reads the walls of a level the way GameTiles.setForeground does:
+     * fences (1) and scenery (4 to 9) are walls, the battery (10) is not
+     */
+    private static boolean[][] readLevel(File file){
+        ArrayList<boolean[]> rows = new ArrayList<boolean[]>();
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] cells = line.trim().split("\\s+");
+                if(cells.length == 0 || cells[0].equals("")) continue;
+                boolean[] row = new boolean[cells.length];
+                for(int c=0;c<cells.length;c++){
+                    int cell = Integer.parseInt(cells[c]);
+                    row[c] = cell == 1 || (cell >= 4 && cell <= 9);
+                }
+                rows.add(row);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } catch (NumberFormatException e){
+            System.err.println("Parsing level "+file+": "+e.getMessage());
+            return null;
+        } finally {
+            try {
+                if (br != null)br.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        if(rows.isEmpty()) return null;
+        return rows.toArray(new boolean[rows.size()][]);
+    }
+
+    private static boolean[][] open(int size){
+        return new boolean[size][size];
+    }
+
+    /**
+     * One cell in ten is a wall
+     */
+    private static boolean[][] sparse(int size, Random random){
+        boolean[][] walls = new boolean[size][size];
+        for(int r=0;r<size;r++){
+            for(int c=0;c<size;c++){
+                walls[r][c] = random.nextInt(10) == 0;
+            }
+        }
+        return walls;
+    }
+
+    /**
+     * A perfect maze carved by a depth first walk over the odd cells,
+     * so there is exactly one way between any two open cells
+     */
+    private static boolean[][] maze(int size, Random random){
+        boolean[][] walls = new boolean[size][size];
+        for(boolean[] row : walls){
+            Arrays.fill(row, true);
+        }
+        int[] dr = {-2, 0, 2, 0};
+        int[] dc = {0, 2, 0, -2};
+        int[] stack = new int[size*size];
+        int top = 0;
+        walls[1][1] = false;
+        stack[top++] = 1*size + 1;
+        while(top > 0){
+            int cell = stack[top-1];
+            int r = cell/size;
+            int c = cell%size;
+            int[] order = {0, 1, 2, 3};
+            for(int i=3;i>0;i--){
+                int j = random.nextInt(i+1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            boolean moved = false;
+            for(int k : order){
+                int nr = r + dr[k];
+                int nc = c + dc[k];
+                if(nr > 0 && nc > 0 && nr < size-1 && nc < size-1 && walls[nr][nc]){
+                    walls[r + dr[k]/2][c + dc[k]/2] = false;
+                    walls[nr][nc] = false;
+                    stack[top++] = nr*size + nc;
+                    moved = true;
+                    break;
+                }
+            }
+            if(!moved){
+                top--;
+            }
+        }
+        return walls;
+    }
+
+    private static Point randomOpen(boolean[][] walls, Random random){
+        int rows = walls.length;
+        int cols = walls[0].length;
+        for(int tries=0;tries<10000;tries++){
+            int r = random.nextInt(rows);
+            int c = random.nextInt(cols);
+            if(!walls[r][c]) return new Point(c, r);
+        }
+        return new Point(0, 0);
+    }
+}
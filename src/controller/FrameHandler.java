@@ -7,16 +7,25 @@ import java.awt.geom.Area;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Hashtable;
 import java.util.LinkedList;
+import java.util.concurrent.RecursiveAction;
 
 import model.Constants;
+import model.EnemyStore;
 import model.MovieClip;
 import model.Pathfinding;
 import model.Tile;
 import model.animation.IteratingAnimation.Direction;
+import model.pathfinding.CooperativePlanner;
+import model.pathfinding.DistanceField;
+import model.pathfinding.Algorithm;
+import model.pathfinding.IncrementalPlanner;
+import model.pathfinding.PathCache;
+import model.tileboard.LightField;
+import model.utils.Cells;
 import model.utils.DPoint;
-import model.utils.Utils;
 import model.Model;
 import model.Model.State;
 
@@ -27,6 +36,10 @@ import model.Model.State;
  */
 public class FrameHandler implements ActionListener{
     
+    //enemyNextHop's answer when it has left the search for searchHop
+    private static final int SEARCH = -2;
+    //same, for an A* search the path cache didn't have, its path goes in the cache after
+    private static final int SEARCH_PATH = -3;
 
     private Controller controller;
     private Model model;
@@ -34,6 +47,46 @@ public class FrameHandler implements ActionListener{
     private AbstractMouseHandler mouse;
     private KeyHandler keys;
     
+    //distance to the player, shared by all enemies during a turn
+    private DistanceField playerField = new DistanceField();
+    private boolean playerFieldReady;
+    //distance to the player over the walls alone, for enemies hemmed in by others that might move
+    private DistanceField wallsField = new DistanceField();
+    private boolean wallsFieldReady;
+    
+    //each enemy's own planner, kept for the whole level along with the board they plan on
+    private Hashtable<Integer, IncrementalPlanner> planners = new Hashtable<Integer, IncrementalPlanner>();
+    private boolean[][] plannerBoard;
+    
+    //enemies standing still ask for the same path turn after turn
+    private PathCache pathCache = new PathCache(Constants.PATH_CACHE_SIZE);
+    
+    //plans all the chasing enemies at once so they make way for each other
+    private CooperativePlanner cooperative = new CooperativePlanner(Constants.COOPERATIVE_WINDOW);
+    
+    //works out the enemies' next turn while the player makes up their mind
+    private SpeculativeTurn speculation = new SpeculativeTurn();
+    //counts enemy turns, so a speculation knows which turn it was for
+    private int turn;
+    
+    //settles who gets a cell when the enemies all pick their hops at once
+    private HopResolver resolver = new HopResolver();
+    
+    //whether the enemies move last to first this turn
+    private boolean enemiesReversed;
+    //numbers in model.enemies of the enemies near enough to chase
+    private int[] nearby = new int[0];
+    //sprites of enemies that hopped last turn, their slide has to be stopped
+    private ArrayList<Tile> hopped = new ArrayList<Tile>();
+    
+    //numbers of the enemies that have a sprite, smallest first, and the store they are for
+    private int[] onScreen = new int[0];
+    private int onScreenCount;
+    private EnemyStore boundStore;
+    private int[] visible = new int[0];
+    //sprites given back by enemies that went off screen, lent out again to the next ones on
+    private ArrayList<Tile> spareSprites = new ArrayList<Tile>();
+    
     //private long lastTime;
     
     public FrameHandler(Controller controller, Model model) {
@@ -100,40 +153,48 @@ public class FrameHandler implements ActionListener{
             aimPlayer();
             calcCurrentLight();
 
+            bindEnemySprites();
             updateChupaLight();
             
             //to avoid last light being incorrect, player cannot move and turn on same frame
             if(!model.playerHasTurned){
                 
-                Point newPosition = new Point(model.player.col,model.player.row);
+                int newRow = model.player.row;
+                int newCol = model.player.col;
                 boolean keyPressed = false;
                 
                 if (keys.isDown(65)){
-                    newPosition = new Point(newPosition.x-1,newPosition.y);
+                    newCol--;
                     keyPressed = true;
                 }else if (keys.isDown(68)){
-                    newPosition = new Point(newPosition.x+1,newPosition.y);
+                    newCol++;
                     keyPressed = true;
                 }else if (keys.isDown(83)){
-                    newPosition = new Point(newPosition.x,newPosition.y+1);
+                    newRow++;
                     keyPressed = true;
                 }else if (keys.isDown(87)){
-                    newPosition = new Point(newPosition.x,newPosition.y-1);
+                    newRow--;
                     keyPressed = true;
                 }
                 
                 
                 //if(keys.keyJustPressed(66)) model.completeLevel();
                 
-                boolean validMove = model.gameboard.inBounds(newPosition.y, newPosition.x) &&
-                        !model.gameboard.walls[newPosition.y][newPosition.x];
+                boolean validMove = model.gameboard.inBounds(newRow, newCol) &&
+                        !model.gameboard.walls[newRow][newCol];
                 
                 if (keyPressed && validMove){
-                    model.gameboard.calculateBits(model.player, newPosition);
-                    model.player.row = newPosition.y;
-                    model.player.col = newPosition.x;
+                    int[] planned = null;
+                    if(Constants.SPECULATIVE_TURNS){
+                        planned = speculation.take(turn, model.gameboard.obstacles.board(),
+                                model.gameboard.obstacles.version(), model.player.row, model.player.col,
+                                newRow, newCol, beamRowStep(), beamColStep());
+                    }
+                    model.gameboard.calculateBits(model.player, newRow, newCol);
+                    model.player.row = newRow;
+                    model.player.col = newCol;
                     calcCurrentLight();
-                    calcEnemyMovement();
+                    calcEnemyMovement(planned);
 
                     playerWalkAnimation();
                     
@@ -145,6 +206,10 @@ public class FrameHandler implements ActionListener{
                 }
             }
             
+            if(Constants.SPECULATIVE_TURNS && model.gameState == State.WAIT_FOR_PLAYER){
+                speculate();
+            }
+            
             updateLightAnims();
         }
         else if (model.gameState == State.MOVE_CHARACTERS){
@@ -156,15 +221,16 @@ public class FrameHandler implements ActionListener{
             if(model.moveTimer < Constants.MOVE_TIME){
                 model.player.moveABit();
                 
-                for(Tile enemy : model.enemies){
-                    enemy.moveABit();
+                bindEnemySprites();
+                for(int k=0;k<onScreenCount;k++){
+                    model.enemies.sprite[onScreen[k]].moveABit();
                 }
                 
                 updateLightAnims();
 
                 model.moveTimer ++;
             }else{
-                boolean enemyTouchPlayer = Utils.isInTileList(model.player, model.enemies);
+                boolean enemyTouchPlayer = model.enemies.at(model.player.row, model.player.col) != -1;
                 boolean touchBattery = model.player.row == model.battery.row && model.player.col == model.battery.col;
                 if(enemyTouchPlayer){
                     model.moveTimer = 0;
@@ -208,7 +274,8 @@ public class FrameHandler implements ActionListener{
                     //set to real position so that inaccuracies with
                     //movement don't pile up
                     model.gameboard.realPosition(model.player);
-                    for(Tile enemy : model.enemies){
+                    for(int k=0;k<onScreenCount;k++){
+                        Tile enemy = model.enemies.sprite[onScreen[k]];
                         model.gameboard.realPosition(enemy);
                         chupaIdleAnimation(enemy);
                     }
@@ -334,10 +401,104 @@ public class FrameHandler implements ActionListener{
     
 
     private Tile enemyAt(int col, int row) {
-        for(Tile enemy : model.enemies){
-            if (enemy.row == row && enemy.col == col) return enemy;
+        int i = model.enemies.at(row, col);
+        if(i == -1){
+            return null;
         }
-        return null;
+        if(model.enemies.sprite[i] == null){
+            //the player's cell is always on screen, but just in case
+            bindSprite(i);
+        }
+        return model.enemies.sprite[i];
+    }
+    
+    /**
+     * Lends sprites to the enemies that have come on screen and takes them
+     * back from the ones that have gone off it, so only enemies that can be
+     * seen have a Tile. Cheap to call every frame, it only looks at the
+     * buckets of the enemy hash under the screen.
+     */
+    private void bindEnemySprites() {
+        EnemyStore enemies = model.enemies;
+        if(boundStore != enemies){
+            //a new level, the display list was cleared so the old sprites are all spare
+            if(boundStore != null){
+                for(int k=0;k<onScreenCount;k++){
+                    spareSprites.add(boundStore.sprite[onScreen[k]]);
+                }
+            }
+            boundStore = enemies;
+            onScreenCount = 0;
+            hopped.clear();
+        }
+        if(visible.length < enemies.count){
+            visible = new int[enemies.count];
+            onScreen = Arrays.copyOf(onScreen, enemies.count);
+        }
+        //a tile's worth of margin around the screen, so no one pops in at the edge
+        int marginX = model.gameboard.width + model.gameboard.visualX;
+        int marginY = model.gameboard.height + model.gameboard.visualY;
+        double left = -model.levelShiftX - marginX;
+        double top = -model.levelShiftY - marginY;
+        int count = enemiesInBox(left, top, left + Constants.GAME_WIDTH + 2*marginX,
+                top + Constants.GAME_HEIGHT + 2*marginY, visible);
+        
+        //both lists are smallest first, so one pass finds who went off screen
+        int v = 0;
+        for(int k=0;k<onScreenCount;k++){
+            int i = onScreen[k];
+            while(v < count && visible[v] < i){
+                v++;
+            }
+            if((v == count || visible[v] != i) && enemies.sprite[i] != null){
+                Tile sprite = enemies.sprite[i];
+                enemies.sprite[i] = null;
+                if(model.displayList.get(2).contains(sprite)){
+                    model.removeChild(sprite);
+                }
+                spareSprites.add(sprite);
+            }
+        }
+        boolean added = false;
+        for(int k=0;k<count;k++){
+            if(enemies.sprite[visible[k]] == null){
+                bindSprite(visible[k]);
+                added = true;
+            }
+        }
+        System.arraycopy(visible, 0, onScreen, 0, count);
+        onScreenCount = count;
+        if(added){
+            model.gameboard.sortDepth(2);
+        }
+    }
+    
+    /**
+     * Gives an enemy a sprite standing on its cell, hiding if it is in the light
+     * @param i Its number in model.enemies
+     */
+    private void bindSprite(int i) {
+        EnemyStore enemies = model.enemies;
+        Tile sprite;
+        if(spareSprites.isEmpty()){
+            sprite = new Tile("images/Chupacabra",true);
+        }else{
+            sprite = spareSprites.remove(spareSprites.size()-1);
+        }
+        sprite.row = enemies.row[i];
+        sprite.col = enemies.col[i];
+        sprite.dir = enemies.getDir(i);
+        sprite.bitX = 0;
+        sprite.bitY = 0;
+        model.gameboard.realPosition(sprite);
+        if(model.currLight.isLit(sprite.row, sprite.col)){
+            sprite.swapAndResume("ChupaHide");
+        }else{
+            chupaFaceAnimation(sprite);
+        }
+        sprite.setDirection(Direction.FORWARD);
+        enemies.sprite[i] = sprite;
+        model.addChild(sprite, 2);
     }
 
     private void playerIdleAnimation() {
@@ -371,10 +532,7 @@ public class FrameHandler implements ActionListener{
     }
 
     private void calcLastLight() {
-        model.lastLight.clear();
-        for(Point p : model.currLight){
-            model.lastLight.add(new Point(p.x,p.y));
-        }
+        model.lastLight.copyFrom(model.currLight);
     }
 
     private void aimPlayer() {
@@ -438,32 +596,69 @@ public class FrameHandler implements ActionListener{
         
     }
     
-    private void calcEnemyMovement() {
-        //since enemies determine movement one at a time
-        //reverse list to avoid certain ones getting special treatment
-        Collections.reverse(model.enemies);
-        for (Tile enemy : model.enemies){
-            
-            //distance from player
-            int xdis = (int) (enemy.x - model.player.x);
-            int ydis = (int) (enemy.y - model.player.y);
-            int dist = (int) Math.sqrt(xdis*xdis + ydis*ydis);
-            boolean closeEnough = dist < 550;
-            
-            
+    /**
+     * Moves every enemy one hop toward the player
+     * @param planned The hops worked out ahead by the speculative planner,
+     *      in the order the enemies move, or null to work them out now
+     */
+    private void calcEnemyMovement(int[] planned) {
+        //kept up to date as enemies move, so each enemy sees the others where they are now
+        boolean[][] wallsAndEnemies = model.gameboard.obstacles.board();
+        if(plannerBoard != wallsAndEnemies){
+            //a new level, the planners were planning on the last one
+            plannerBoard = wallsAndEnemies;
+            planners.clear();
+            enemiesReversed = false;
+            if(Constants.DEBUG) System.out.println("path cache hits: "+pathCache.getHits()+" misses: "+pathCache.getMisses());
+            pathCache.resetCounters();
+        }
+        playerFieldReady = false;
+        wallsFieldReady = false;
+        turn++;
+        
+        //only the enemies that hopped last turn are still sliding
+        for(Tile enemy : hopped){
             enemy.bitX = 0;
             enemy.bitY = 0;
-            boolean enemyWasInLight = Utils.isInList(enemy, model.lastLight);
-            if(!enemyWasInLight && closeEnough){
+        }
+        hopped.clear();
+        
+        int count;
+        if(Constants.ENEMY_PATHING == 3){
+            //everyone takes part, the ones that won't move hold their cells
+            count = planTogether();
+        }else if(Constants.SIMULTANEOUS_MOVES){
+            //everyone picks from the same board, so no one goes first
+            enemiesReversed = false;
+            count = nearbyEnemies();
+            if(planned == null || planned.length != count){
+                planned = proposeHops(count, wallsAndEnemies);
+            }
+        }else{
+            //since enemies determine movement one at a time
+            //flip the order to avoid certain ones getting special treatment
+            enemiesReversed = !enemiesReversed;
+            count = nearbyEnemies();
+        }
+        if(planned != null && planned.length != count){
+            planned = null;
+        }
+        
+        for (int k=0;k<count;k++){
+            int index = enemiesReversed ? nearby[count-1-k] : nearby[k];
+            if(planned != null){
+                //may be into the cell of one that hasn't hopped yet, the board counts both till it does
+                int hop = planned[k];
+                if(hop != Cells.NONE){
+                    hopEnemy(index, model.gameboard.cellRow(hop), model.gameboard.cellCol(hop));
+                }
+            }else if(canChase(index)){
                 //CALCULATE PATH TO PLAYER
-                boolean[][] wallsAndEnemies = model.gameboard.wallsAndEnemies();
-                Point start = new Point(enemy.col,enemy.row);
-                Point end = new Point(model.player.col,model.player.row);
-                LinkedList<Point> path = Pathfinding.findPath(wallsAndEnemies, start, end, true, 1);
-               
+                int nextHop = enemyNextHop(index, wallsAndEnemies, false);
                 
-                if(path != null && path.size()>0){
-                    Point nextHop = path.getFirst();
+                if(nextHop != Cells.NONE){
+                    int hopRow = model.gameboard.cellRow(nextHop);
+                    int hopCol = model.gameboard.cellCol(nextHop);
                     
                     
                     /*
@@ -473,7 +668,7 @@ public class FrameHandler implements ActionListener{
                     //
                     //this ended up being too hard 
                     
-                    boolean nextHopCurrInLight = Utils.isInList(nextHop, model.currLight);
+                    boolean nextHopCurrInLight = model.currLight.isLit(nextHop);
                     
                     if(!nextHopCurrInLight){
                         if(!wallsAndEnemies[nextHop.y][nextHop.x]){
@@ -493,8 +688,8 @@ public class FrameHandler implements ActionListener{
                     //
                     //this ended up being too easy
                      
-                    boolean nextHopWasInLight = Utils.isInList(nextHop, model.lastLight);
-                    boolean nextHopCurrInLight = Utils.isInList(nextHop, model.currLight);
+                    boolean nextHopWasInLight = model.lastLight.isLit(nextHop);
+                    boolean nextHopCurrInLight = model.currLight.isLit(nextHop);
                     
                     if(!nextHopCurrInLight && !nextHopWasInLight){
                         if(!wallsAndEnemies[nextHop.y][nextHop.x]){
@@ -511,69 +706,493 @@ public class FrameHandler implements ActionListener{
                     //his next hop will put him in a position where light was previously (still fading) 
                     //BUT: he can always move if he is just one hop away from attacking player
                     
-                    boolean nextHopWasInLight = Utils.isInList(nextHop, model.lastLight);
-                    boolean nextHopCurrInLight = Utils.isInList(nextHop, model.currLight);
-                    boolean nextHopIsPlayer = nextHop.equals(model.player.getPos());
+                    boolean nextHopWasInLight = model.lastLight.isLit(nextHop);
+                    boolean nextHopCurrInLight = model.currLight.isLit(nextHop);
+                    boolean nextHopIsPlayer = nextHop == model.player.getCell(model.gameboard.cols);
                     
                     if((!nextHopCurrInLight && !nextHopWasInLight) || nextHopIsPlayer){
-                        if(!wallsAndEnemies[nextHop.y][nextHop.x]){
-                            model.gameboard.calculateBits(enemy, nextHop);
-                            chupaHopAnimation(enemy, nextHop);
-                            enemy.row = nextHop.y;
-                            enemy.col = nextHop.x; 
-                            
+                        if(!wallsAndEnemies[hopRow][hopCol]){
+                            hopEnemy(index, hopRow, hopCol);
                         }
                     }
                 }
             }
         }
     }
+    
+    /**
+     * Starts an enemy's hop to a cell, and its sprite's if it is on screen
+     * @param index Its number in model.enemies
+     */
+    private void hopEnemy(int index, int row, int col) {
+        EnemyStore enemies = model.enemies;
+        Tile.Direction dir = hopDirection(enemies.row[index], enemies.col[index], row, col, enemies.getDir(index));
+        enemies.setDir(index, dir);
+        Tile sprite = enemies.sprite[index];
+        if(sprite != null){
+            model.gameboard.calculateBits(sprite, row, col);
+            chupaHopAnimation(sprite, dir);
+            sprite.row = row;
+            sprite.col = col;
+            hopped.add(sprite);
+        }
+        moveOnBoard(enemies.row[index], enemies.col[index], false);
+        moveOnBoard(row, col, true);
+        enemies.move(index, row, col);
+        model.gameboard.enemyHash.put(index, row, col);
+    }
+    
+    /**
+     * Works out where each nearby enemy wants to hop, all from the board as
+     * it is before anyone moves, then settles who gets a cell more than one
+     * of them wants. Lookups in the shared distance field, hop table and path
+     * cache are quick and done here, the searches are split over the
+     * pathfinding pool.
+     * An enemy the others wall off heads the way it would over the walls
+     * alone, which only works out if the one in its way moves on.
+     * @param count How many enemies are in nearby
+     * @param wallsAndEnemies The board with all enemies marked as walls
+     * @return Cell id each enemy hops to, in the order of nearby, Cells.NONE
+     *      for one that stays put
+     */
+    private int[] proposeHops(int count, boolean[][] wallsAndEnemies) {
+        int cols = model.gameboard.cols;
+        int player = model.player.getCell(cols);
+        int[] hops = new int[count];
+        int[] from = new int[count];
+        int[] searches = new int[count];
+        boolean[] cachePath = new boolean[count];
+        int searchCount = 0;
+        for(int k=0;k<count;k++){
+            int i = nearby[k];
+            from[k] = model.enemies.row[i]*cols + model.enemies.col[i];
+            hops[k] = canChase(i) ? enemyNextHop(i, wallsAndEnemies, true) : Cells.NONE;
+            if(hops[k] == SEARCH || hops[k] == SEARCH_PATH){
+                cachePath[k] = hops[k] == SEARCH_PATH;
+                searches[searchCount++] = k;
+            }
+        }
+        if(searchCount > 0){
+            //filled in place, so the workers only ever set their own slots
+            ArrayList<LinkedList<Point>> paths = new ArrayList<LinkedList<Point>>(count);
+            for(int k=0;k<count;k++){
+                paths.add(null);
+            }
+            Pathfinding.getPool().invoke(new HopSearch(wallsAndEnemies, hops, paths, searches, 0, searchCount));
+            //the cache can't be shared between threads, so what the pool found goes in now
+            int version = model.gameboard.obstacles.version();
+            for(int j=0;j<searchCount;j++){
+                int k = searches[j];
+                if(cachePath[k]){
+                    pathCache.put(wallsAndEnemies, version, from[k], player, Algorithm.ASTAR, 1, paths.get(k));
+                }
+            }
+        }
+        
+        for(int k=0;k<count;k++){
+            int i = nearby[k];
+            if(hops[k] == Cells.NONE && canChase(i)){
+                if(!wallsFieldReady){
+                    wallsField.compute(model.gameboard.walls, model.player.row, model.player.col, 1);
+                    wallsFieldReady = true;
+                }
+                hops[k] = wallsField.nextHop(model.enemies.row[i], model.enemies.col[i]);
+            }
+            //same rule as attempt 3 in calcEnemyMovement, the resolver sees to the blocked cells
+            int hop = hops[k];
+            boolean inLight = hop != Cells.NONE && (model.currLight.isLit(hop) || model.lastLight.isLit(hop));
+            if(inLight && hop != player){
+                hops[k] = Cells.NONE;
+            }
+        }
+        resolver.resolve(hops, from, nearby, count, turn, wallsAndEnemies);
+        return hops;
+    }
+    
+    /**
+     * Runs the searches proposeHops left for searchHop, splitting them in
+     * half until there are only a few. Each writes only its own enemy's hop,
+     * and its path too if it was an A* search.
+     */
+    private class HopSearch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private boolean[][] wallsAndEnemies;
+        private int[] hops;
+        private ArrayList<LinkedList<Point>> paths;
+        private int[] searches;
+        private int from;
+        private int to;
+        
+        HopSearch(boolean[][] wallsAndEnemies, int[] hops, ArrayList<LinkedList<Point>> paths, int[] searches, int from, int to) {
+            this.wallsAndEnemies = wallsAndEnemies;
+            this.hops = hops;
+            this.paths = paths;
+            this.searches = searches;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute(){
+            if(to - from <= 4){
+                for(int j=from;j<to;j++){
+                    int k = searches[j];
+                    if(hops[k] == SEARCH_PATH){
+                        LinkedList<Point> path = searchPath(nearby[k], wallsAndEnemies);
+                        paths.set(k, path);
+                        hops[k] = firstStep(path);
+                    }else{
+                        hops[k] = searchHop(nearby[k], wallsAndEnemies);
+                    }
+                }
+            }else{
+                int mid = (from + to) >>> 1;
+                invokeAll(new HopSearch(wallsAndEnemies, hops, paths, searches, from, mid),
+                        new HopSearch(wallsAndEnemies, hops, paths, searches, mid, to));
+            }
+        }
+    }
+    
+    /**
+     * Finds the enemies that might be close enough to chase the player,
+     * looking only at the buckets of the spatial hash around the player
+     * @return How many were found, their numbers in model.enemies are at
+     *      the start of nearby, smallest first
+     */
+    private int nearbyEnemies() {
+        if(nearby.length < model.enemies.count){
+            nearby = new int[model.enemies.count];
+        }
+        //the square of screen space around the player.
+        //one pixel more since closeEnough rounds the distance down
+        int reach = Constants.CHASE_DISTANCE + 1;
+        return enemiesInBox(model.player.x - reach, model.player.y - reach,
+                model.player.x + reach, model.player.y + reach, nearby);
+    }
+    
+    /**
+     * Finds the enemies that might be in a box of screen space, by the
+     * block of tiles the box covers
+     * @param out Filled with their numbers in model.enemies, smallest first
+     * @return How many were found
+     */
+    private int enemiesInBox(double left, double top, double right, double bottom, int[] out) {
+        double minRow = Double.MAX_VALUE, maxRow = -Double.MAX_VALUE;
+        double minCol = Double.MAX_VALUE, maxCol = -Double.MAX_VALUE;
+        for(int corner=0;corner<4;corner++){
+            double x = corner%2 == 0 ? left : right;
+            double y = corner/2 == 0 ? top : bottom;
+            DPoint tile = model.gameboard.xyToTile(x, y);
+            minCol = Math.min(minCol, tile.x);
+            maxCol = Math.max(maxCol, tile.x);
+            minRow = Math.min(minRow, tile.y);
+            maxRow = Math.max(maxRow, tile.y);
+        }
+        return model.gameboard.enemyHash.query((int) Math.floor(minRow), (int) Math.ceil(maxRow),
+                (int) Math.floor(minCol), (int) Math.ceil(maxCol), out);
+    }
+    
+    /**
+     * Will an enemy try to move toward the player this turn?
+     * @param i The enemy's number in model.enemies
+     * @return Whether it is out of the light and close enough to the player
+     */
+    private boolean canChase(int i) {
+        boolean enemyWasInLight = model.lastLight.isLit(model.enemies.row[i], model.enemies.col[i]);
+        return !enemyWasInLight && closeEnough(i);
+    }
+    
+    /**
+     * Is an enemy near enough to the player to give chase?
+     */
+    private boolean closeEnough(int i) {
+        //distance from player, from where the enemy's sprite stands between hops
+        int row = model.enemies.row[i];
+        int col = model.enemies.col[i];
+        int xdis = (int) (model.gameboard.tileToX(col, row) - model.player.x);
+        int ydis = (int) (model.gameboard.tileToY(col, row) - model.player.y);
+        int dist = (int) Math.sqrt(xdis*xdis + ydis*ydis);
+        return dist < Constants.CHASE_DISTANCE;
+    }
+    
+    /**
+     * Hands the speculative planner what it needs to work out the enemies'
+     * answers to each move, if it isn't already working on this state.
+     * The enemies are listed in the order calcEnemyMovement will move them.
+     */
+    private void speculate() {
+        if(Constants.ENEMY_PATHING != 0 && Constants.ENEMY_PATHING != 1){
+            return;
+        }
+        boolean[][] board = model.gameboard.obstacles.board();
+        int version = model.gameboard.obstacles.version();
+        if(speculation.isFor(turn, board, version, model.player.row, model.player.col, beamRowStep(), beamColStep())){
+            return;
+        }
+        //the order flips before the enemies move, and starts over on a new level
+        boolean reversed = !Constants.SIMULTANEOUS_MOVES && (plannerBoard != board || !enemiesReversed);
+        int count = nearbyEnemies();
+        int[] ids = new int[count];
+        int[] rows = new int[count];
+        int[] cols = new int[count];
+        boolean[] close = new boolean[count];
+        for(int k=0;k<count;k++){
+            int i = reversed ? nearby[count-1-k] : nearby[k];
+            ids[k] = i;
+            rows[k] = model.enemies.row[i];
+            cols[k] = model.enemies.col[i];
+            close[k] = closeEnough(i);
+        }
+        speculation.speculate(turn, board, version, model.gameboard.walls, model.player.row, model.player.col,
+                beamRowStep(), beamColStep(), model.currLight, ids, rows, cols, close);
+    }
+    
+    /**
+     * Starts the cooperative planner's turn. Enemies that won't move keep
+     * their cells, and the rest are lined up closest to the player first,
+     * the order they will plan and move in.
+     * @return How many enemies there are, their numbers in that order are
+     *      at the start of nearby
+     */
+    private int planTogether() {
+        EnemyStore enemies = model.enemies;
+        cooperative.begin(model.gameboard.walls, model.player.row, model.player.col);
+        for(int i=0;i<enemies.count;i++){
+            if(canChase(i)){
+                cooperative.addAgent(enemies.row[i], enemies.col[i]);
+            }else{
+                cooperative.hold(enemies.row[i], enemies.col[i]);
+            }
+        }
+        //distance in the high half and number in the low half, so ties keep to the numbering
+        long[] order = new long[enemies.count];
+        for(int i=0;i<enemies.count;i++){
+            order[i] = ((long) cooperative.distance(enemies.row[i], enemies.col[i]) << 32) | i;
+        }
+        Arrays.sort(order);
+        if(nearby.length < enemies.count){
+            nearby = new int[enemies.count];
+        }
+        for(int k=0;k<enemies.count;k++){
+            nearby[k] = (int) order[k];
+        }
+        return enemies.count;
+    }
+    
+    /**
+     * Marks an enemy arriving at or leaving a cell of the board, and
+     * tells whatever is planning on the board if the cell flipped
+     * @param row Row of the cell
+     * @param col Column of the cell
+     * @param occupied Whether an enemy is now standing there
+     */
+    private void moveOnBoard(int row, int col, boolean occupied) {
+        boolean changed = occupied ? model.gameboard.obstacles.occupy(row, col)
+                : model.gameboard.obstacles.vacate(row, col);
+        if(!changed){
+            return;
+        }
+        model.gameboard.obstacleChanged(row, col);
+        if(playerFieldReady){
+            playerField.cellChanged(row, col);
+        }
+        for(IncrementalPlanner planner : planners.values()){
+            planner.cellChanged(row, col);
+        }
+    }
+    
+    /**
+     * Finds the first step of an enemy's path to the player
+     * @param i The number in model.enemies of the enemy to move
+     * @param wallsAndEnemies The board with all enemies marked as walls
+     * @param deferSearch Return SEARCH or SEARCH_PATH instead of searching,
+     *      for HopSearch to do later on another thread
+     * @return Cell id of the next hop, or Cells.NONE if the player can't be reached
+     */
+    private int enemyNextHop(int i, boolean[][] wallsAndEnemies, boolean deferSearch) {
+        int row = model.enemies.row[i];
+        int col = model.enemies.col[i];
+        if(Constants.ENEMY_PATHING == 3){
+            //other enemies are in the reservations, not walls, so they don't wall anyone off
+            int hop = cooperative.nextHop(row, col);
+            return hop;
+        }
+        //walled off, no need to search every cell to find that out
+        if(!model.gameboard.components.canReach(row, col, model.player.row, model.player.col)){
+            return Cells.NONE;
+        }
+        if(Constants.ENEMY_PATHING == 4 && model.gameboard.nextHops != null){
+            int hop = model.gameboard.nextHops.nextHop(row, col, model.player.row, model.player.col);
+            //the table only knows the walls, search around the other enemies if one is in the way
+            if(hop != Cells.NONE && !wallsAndEnemies[model.gameboard.cellRow(hop)][model.gameboard.cellCol(hop)]){
+                return hop;
+            }
+        }
+        if(Constants.ENEMY_PATHING == 5){
+            //the cluster graph isn't safe to share between threads, so this is never left for searchHop
+            return firstStep(model.gameboard.getHierarchy().findPath(new Point(col, row),
+                    new Point(model.player.col, model.player.row)));
+        }
+        if(Constants.ENEMY_PATHING == 6 || Constants.ENEMY_PATHING == 7){
+            if(Constants.ENEMY_PATHING == 7){
+                //found here so the pool's threads only ever read it
+                model.gameboard.getTerrain();
+            }
+            if(deferSearch){
+                return SEARCH;
+            }
+            return searchHop(i, wallsAndEnemies);
+        }
+        if(Constants.ENEMY_PATHING == 2){
+            IncrementalPlanner planner = planners.get(i);
+            if(planner == null){
+                planner = new IncrementalPlanner(wallsAndEnemies, 1);
+                planners.put(i, planner);
+            }
+            if(deferSearch){
+                return SEARCH;
+            }
+            int hop = planner.nextHop(row, col, model.player.row, model.player.col);
+            return hop;
+        }
+        if(Constants.ENEMY_PATHING == 1){
+            if(!playerFieldReady){
+                playerField.compute(wallsAndEnemies, model.player.row, model.player.col, 1);
+                playerFieldReady = true;
+            }
+            //on a tie, let A* pick the hop like it always has
+            if(!playerField.hasTiedHops(row, col)){
+                int hop = playerField.nextHop(row, col);
+                return hop;
+            }
+        }
+        
+        int cell = model.gameboard.cell(row, col);
+        int player = model.player.getCell(model.gameboard.cols);
+        int version = model.gameboard.obstacles.version();
+        //only the misses are left for the pool
+        if(deferSearch && !pathCache.contains(wallsAndEnemies, version, cell, player, Algorithm.ASTAR, 1)){
+            return SEARCH_PATH;
+        }
+        return pathCache.nextHop(wallsAndEnemies, version, cell, player, Algorithm.ASTAR, 1);
+    }
+
+    /**
+     * The search enemyNextHop left for later. Safe to run for several
+     * enemies at once while the board doesn't change.
+     * @param i The number in model.enemies of the enemy to move
+     * @param wallsAndEnemies The board with all enemies marked as walls
+     * @return Cell id of the next hop, or Cells.NONE if there is no path
+     */
+    private int searchHop(int i, boolean[][] wallsAndEnemies) {
+        int row = model.enemies.row[i];
+        int col = model.enemies.col[i];
+        if(Constants.ENEMY_PATHING == 2){
+            //each enemy has its own planner, made before the searches started
+            return planners.get(i).nextHop(row, col, model.player.row, model.player.col);
+        }
+        if(Constants.ENEMY_PATHING == 6){
+            return firstStep(Pathfinding.findPath(wallsAndEnemies, new Point(col, row),
+                    new Point(model.player.col, model.player.row), model.gameboard.getLandmarks(), 1));
+        }
+        if(Constants.ENEMY_PATHING == 7){
+            return firstStep(Pathfinding.findPath(wallsAndEnemies, new Point(col, row),
+                    new Point(model.player.col, model.player.row), model.gameboard.getTerrain(), 1));
+        }
+        return firstStep(searchPath(i, wallsAndEnemies));
+    }
 
-    private void chupaHopAnimation(Tile enemy, Point nextHop) {
-        if(nextHop.y>enemy.row){
-            enemy.dir = Tile.Direction.DOWN;
+    /**
+     * The A* search enemyNextHop left for later when the path cache didn't
+     * have it. Doesn't touch the cache, which can't be shared between
+     * threads, so proposeHops puts the path in once the pool is done.
+     * @param i The number in model.enemies of the enemy to move
+     * @param wallsAndEnemies The board with all enemies marked as walls
+     * @return The path to the player, without its start, or null if there is none
+     */
+    private LinkedList<Point> searchPath(int i, boolean[][] wallsAndEnemies) {
+        return Pathfinding.findPath(wallsAndEnemies, new Point(model.enemies.col[i], model.enemies.row[i]),
+                new Point(model.player.col, model.player.row), Algorithm.ASTAR, 1);
+    }
+
+    /**
+     * Where a path to the player goes first
+     * @param path The path, without its start, or null if there is none
+     * @return Cell id of its first step, or Cells.NONE if it has none
+     */
+    private int firstStep(LinkedList<Point> path) {
+        if(path == null || path.isEmpty()){
+            return Cells.NONE;
+        }
+        Point hop = path.getFirst();
+        return model.gameboard.cell(hop.y, hop.x);
+    }
+
+    /**
+     * Which way an enemy faces after a hop. Sideways wins on a diagonal hop.
+     * @param dir Which way it faced before, kept if it didn't move
+     */
+    private Tile.Direction hopDirection(int fromRow, int fromCol, int toRow, int toCol, Tile.Direction dir) {
+        if(toCol<fromCol){
+            return Tile.Direction.LEFT;
+        }
+        if(toCol>fromCol){
+            return Tile.Direction.RIGHT;
+        }
+        if(toRow<fromRow){
+            return Tile.Direction.UP;
+        }
+        if(toRow>fromRow){
+            return Tile.Direction.DOWN;
+        }
+        return dir;
+    }
+
+    private void chupaHopAnimation(Tile enemy, Tile.Direction dir) {
+        enemy.dir = dir;
+        if(dir == Tile.Direction.DOWN){
             enemy.swapAndRestart("ChupaHopFront");
-            enemy.stopAtEnd();
         }
-        if(nextHop.y<enemy.row){
-            enemy.dir = Tile.Direction.UP;
+        if(dir == Tile.Direction.UP){
             enemy.swapAndRestart("ChupaHopBack");
-            enemy.stopAtEnd();
         }
-        if(nextHop.x>enemy.col){
-            enemy.dir = Tile.Direction.RIGHT;
+        if(dir == Tile.Direction.RIGHT){
             enemy.swapAndRestart("ChupaHopRight");
-            enemy.stopAtEnd();
         }
-        if(nextHop.x<enemy.col){
-            enemy.dir = Tile.Direction.LEFT;
+        if(dir == Tile.Direction.LEFT){
             enemy.swapAndRestart("ChupaHopLeft");
-            enemy.stopAtEnd();
         }
-        
+        enemy.stopAtEnd();
     }
     
     private void chupaIdleAnimation(Tile enemy) {
         if(enemy.getCurrentAnim() != "ChupaHide"){
-            if(enemy.dir == Tile.Direction.DOWN){
-                enemy.swapAndResume("ChupaIdleFront");
-            }
-            if(enemy.dir == Tile.Direction.UP){
-                enemy.swapAndResume("ChupaIdleBack");
-            }
-            if(enemy.dir == Tile.Direction.RIGHT){
-                enemy.swapAndResume("ChupaIdleRight");
-            }
-            if(enemy.dir == Tile.Direction.LEFT){
-                enemy.swapAndResume("ChupaIdleLeft");
-            }
+            chupaFaceAnimation(enemy);
         }
         enemy.setDirection(Direction.FORWARD);
     }
     
+    private void chupaFaceAnimation(Tile enemy) {
+        if(enemy.dir == Tile.Direction.DOWN){
+            enemy.swapAndResume("ChupaIdleFront");
+        }
+        if(enemy.dir == Tile.Direction.UP){
+            enemy.swapAndResume("ChupaIdleBack");
+        }
+        if(enemy.dir == Tile.Direction.RIGHT){
+            enemy.swapAndResume("ChupaIdleRight");
+        }
+        if(enemy.dir == Tile.Direction.LEFT){
+            enemy.swapAndResume("ChupaIdleLeft");
+        }
+    }
+    
     private void updateChupaLight() {
-        for(Tile enemy : model.enemies){
-            boolean inLight = Utils.isInList(enemy, model.currLight);
+        //only enemies on screen have a sprite to hide or show
+        for(int k=0;k<onScreenCount;k++){
+            Tile enemy = model.enemies.sprite[onScreen[k]];
+            boolean inLight = model.currLight.isLit(enemy.row, enemy.col);
             if(inLight){
                 if(enemy.getCurrentAnim() != "ChupaHide"){
                     enemy.swapAndResume("ChupaHide");
@@ -584,30 +1203,21 @@ public class FrameHandler implements ActionListener{
                 if(enemy.getCurrentAnim() == "ChupaHide"){
                     makeParticles(enemy,1);
                 }
-                if(enemy.dir == Tile.Direction.DOWN){
-                    enemy.swapAndResume("ChupaIdleFront");
-                }
-                if(enemy.dir == Tile.Direction.UP){
-                    enemy.swapAndResume("ChupaIdleBack");
-                }
-                if(enemy.dir == Tile.Direction.RIGHT){
-                    enemy.swapAndResume("ChupaIdleRight");
-                }
-                if(enemy.dir == Tile.Direction.LEFT){
-                    enemy.swapAndResume("ChupaIdleLeft");
-                }
+                chupaFaceAnimation(enemy);
             }
         }
 
-        //clean ducking list of animations no longer on display list
+        //clean ducking list and grid of animations that have played out,
+        //they take themselves off the display list at their last frame
         ArrayList<Tile> toBeDeleted = new ArrayList<Tile>();
         for(Tile duck : model.duckingEnemies){
-            if(!model.displayList.get(2).contains(duck)){
+            if(duck.isAtEnd()){
                 toBeDeleted.add(duck);
             }
         }
         for(Tile duck : toBeDeleted){
             model.duckingEnemies.remove(duck);
+            model.gameboard.occupancy.remove(duck);
         }
     }
 
@@ -621,6 +1231,7 @@ public class FrameHandler implements ActionListener{
             model.gameboard.realPosition(duck);
             model.addChild(duck, 2);
             model.duckingEnemies.add(duck);
+            model.gameboard.occupancy.add(duck);
             model.diveSound.play();
         }else if(i==1){
             Tile dirt = new Tile("images/Particles/ChupaRise");
@@ -630,47 +1241,50 @@ public class FrameHandler implements ActionListener{
             model.gameboard.realPosition(dirt);
             model.addChild(dirt, 2);
             
-            //delete unfinished ducking animations
-            for(Tile duck : model.duckingEnemies){
-                if(model.displayList.get(2).contains(duck)){
-                    if(dirt.row == duck.row && dirt.col == duck.col){
-                        model.removeChild(duck);
-                    }
+            //delete unfinished ducking animations, a finished one is off the display list already
+            Tile duck = model.gameboard.occupancy.find(dirt.row, dirt.col);
+            while(duck != null){
+                if(!duck.isAtEnd()){
+                    model.removeChild(duck);
                 }
+                model.duckingEnemies.remove(duck);
+                model.gameboard.occupancy.remove(duck);
+                duck = model.gameboard.occupancy.find(dirt.row, dirt.col);
             }
             
         }
     }
 
     private void calcCurrentLight() {
-        int xstep = 0;
-        int ystep = 0;
-        if(model.player.dir == Tile.Direction.LEFT){
-            xstep = -1;
-        }
-        if(model.player.dir == Tile.Direction.RIGHT){
-            xstep = 1;
-        }
+        model.currLight.beam(model.gameboard.walls, model.player.row, model.player.col,
+                beamRowStep(), beamColStep(), Constants.BEAM_LENGTH);
+    }
+    
+    /**
+     * Which way the flashlight points, in rows
+     */
+    private int beamRowStep() {
         if(model.player.dir == Tile.Direction.UP){
-            ystep = -1;
+            return -1;
         }
         if(model.player.dir == Tile.Direction.DOWN){
-            ystep = 1;
+            return 1;
         }
-        
-        int posX = model.player.col;
-        int posY = model.player.row;
-        model.currLight.clear();
-        for(int i =0;i<Constants.BEAM_LENGTH;i++){
-            posX += xstep;
-            posY += ystep;
-            if(!model.gameboard.inBounds(posY,posX) || model.gameboard.walls[posY][posX]){
-                break; //break beam if it hits wall or goes out of bounds
-            }else{
-                model.currLight.add(new Point(posX,posY));
-            }
+        return 0;
+    }
+    
+    /**
+     * Which way the flashlight points, in columns
+     */
+    private int beamColStep() {
+        if(model.player.dir == Tile.Direction.LEFT){
+            return -1;
         }
-    } 
+        if(model.player.dir == Tile.Direction.RIGHT){
+            return 1;
+        }
+        return 0;
+    }
     
     private void updateLightAnims() {
 
@@ -747,16 +1361,20 @@ public class FrameHandler implements ActionListener{
         }
         
         //CALCULATE LAST LIGHT
-        if(model.lastLight.size()>0){
-            int leftBound = model.lastLight.get(0).x;
-            int rightBound = model.lastLight.get(0).x;
-            int upBound = model.lastLight.get(0).y;
-            int downBound = model.lastLight.get(0).y;
-            for(Point p : model.lastLight){
-                leftBound = Math.min(p.x, leftBound);
-                rightBound = Math.max(p.x+1, rightBound);
-                upBound = Math.min(p.y, upBound);
-                downBound = Math.max(p.y+1, downBound);
+        if(!model.lastLight.isEmpty()){
+            LightField light = model.lastLight;
+            int first = light.nextLit(0);
+            int leftBound = first % light.cols();
+            int rightBound = leftBound;
+            int upBound = first / light.cols();
+            int downBound = upBound;
+            for(int cell=first;cell!=-1;cell=light.nextLit(cell+1)){
+                int x = cell % light.cols();
+                int y = cell / light.cols();
+                leftBound = Math.min(x, leftBound);
+                rightBound = Math.max(x+1, rightBound);
+                upBound = Math.min(y, upBound);
+                downBound = Math.max(y+1, downBound);
             }
             
             Point a = model.gameboard.tileToVisualXY(leftBound, upBound);
@@ -771,16 +1389,20 @@ public class FrameHandler implements ActionListener{
         }
 
         //CALCULATE CURRENT LIGHT
-        if(model.currLight.size()>0){
-            int leftBound = model.currLight.get(0).x;
-            int rightBound = model.currLight.get(0).x;
-            int upBound = model.currLight.get(0).y;
-            int downBound = model.currLight.get(0).y;
-            for(Point p : model.currLight){
-                leftBound = Math.min(p.x, leftBound);
-                rightBound = Math.max(p.x+1, rightBound);
-                upBound = Math.min(p.y, upBound);
-                downBound = Math.max(p.y+1, downBound);
+        if(!model.currLight.isEmpty()){
+            LightField light = model.currLight;
+            int first = light.nextLit(0);
+            int leftBound = first % light.cols();
+            int rightBound = leftBound;
+            int upBound = first / light.cols();
+            int downBound = upBound;
+            for(int cell=first;cell!=-1;cell=light.nextLit(cell+1)){
+                int x = cell % light.cols();
+                int y = cell / light.cols();
+                leftBound = Math.min(x, leftBound);
+                rightBound = Math.max(x+1, rightBound);
+                upBound = Math.min(y, upBound);
+                downBound = Math.max(y+1, downBound);
             }
             
             Point a = model.gameboard.tileToVisualXY(leftBound, upBound);
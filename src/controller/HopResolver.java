@@ -0,0 +1,159 @@
+package controller;
+
+import java.util.Arrays;
+
+import model.utils.Cells;
+
+/**
+ * Settles who gets a cell when the enemies all pick their hops at once.
+ * When more than one wants the same cell, the one with the highest
+ * priority this turn gets it and the rest stay where they are.
+ *
+ * An enemy may hop into the cell another one is leaving, so a line of
+ * them walking single file all move on the same turn. Such a hop only goes
+ * ahead if the one it follows gets to move. A ring of enemies each waiting
+ * on the next has no one to go first, so the one with the lowest priority
+ * stays, and with it the rest of the ring.
+ *
+ * An enemy's priority is a hash of its number and the turn, so the same
+ * turn always comes out the same, whatever order the hops were worked out
+ * in, but no enemy wins every time.
+ */
+class HopResolver {
+    /** cell -> place in hops of the enemy holding it, -1 if no one */
+    private int[] claim = new int[0];
+    /** cell -> place in hops of the enemy standing on it, -1 if no one */
+    private int[] standing = new int[0];
+    /** place in hops -> place of the enemy hopping into its cell, -1 if no one */
+    private int[] follower = new int[0];
+    /** place in hops -> which walk around the chains found it, 0 for none yet */
+    private int[] walked = new int[0];
+
+    /**
+     * Takes the hops away from the enemies that lost their cell, or that
+     * wanted a cell whose enemy isn't leaving it
+     * @param hops Cell id each enemy wants, Cells.NONE for none. The losers
+     *      are set to Cells.NONE.
+     * @param from Cell id each enemy stands on
+     * @param ids Number of each enemy in model.enemies, in the same order
+     * @param count How many enemies there are
+     * @param turn The turn being played
+     * @param board The walls and enemies before anyone moves. Other than a
+     *      cell one of these enemies stands on, a blocked cell can't be had.
+     */
+    void resolve(int[] hops, int[] from, int[] ids, int count, int turn, boolean[][] board){
+        int cols = board[0].length;
+        int cells = board.length*cols;
+        if(claim.length < cells){
+            claim = new int[cells];
+            Arrays.fill(claim, -1);
+            standing = new int[cells];
+            Arrays.fill(standing, -1);
+        }
+        if(follower.length < count){
+            follower = new int[count];
+            walked = new int[count];
+        }
+        for(int k=0;k<count;k++){
+            standing[from[k]] = k;
+        }
+
+        for(int k=0;k<count;k++){
+            int hop = hops[k];
+            if(hop == Cells.NONE){
+                continue;
+            }
+            if(board[hop/cols][hop%cols] && standing[hop] == -1){
+                hops[k] = Cells.NONE;
+                continue;
+            }
+            int holder = claim[hop];
+            if(holder == -1){
+                claim[hop] = k;
+            }else if(beats(ids[k], ids[holder], turn)){
+                hops[holder] = Cells.NONE;
+                claim[hop] = k;
+            }else{
+                hops[k] = Cells.NONE;
+            }
+        }
+        //every claimed cell is held by a winner, so clearing theirs clears them all
+        for(int k=0;k<count;k++){
+            follower[k] = -1;
+            walked[k] = 0;
+            if(hops[k] != Cells.NONE){
+                claim[hops[k]] = -1;
+            }
+        }
+
+        //each cell has one winner, so each enemy has at most one follower
+        for(int k=0;k<count;k++){
+            if(hops[k] != Cells.NONE && standing[hops[k]] != -1){
+                follower[standing[hops[k]]] = k;
+            }
+        }
+        for(int k=0;k<count;k++){
+            if(hops[k] == Cells.NONE){
+                stay(hops, k);
+            }
+        }
+        //the hops left waiting are lines ending in a free cell, or rings
+        for(int k=0;k<count;k++){
+            int next = k;
+            while(next != -1 && hops[next] != Cells.NONE && walked[next] == 0){
+                walked[next] = k + 1;
+                next = standing[hops[next]];
+            }
+            if(next == -1 || hops[next] == Cells.NONE || walked[next] != k + 1){
+                continue;
+            }
+            int lowest = next;
+            for(int j=standing[hops[next]];j!=next;j=standing[hops[j]]){
+                if(beats(ids[lowest], ids[j], turn)){
+                    lowest = j;
+                }
+            }
+            hops[lowest] = Cells.NONE;
+            stay(hops, lowest);
+        }
+
+        for(int k=0;k<count;k++){
+            standing[from[k]] = -1;
+        }
+    }
+
+    /**
+     * An enemy isn't leaving its cell, so whoever was following it into
+     * that cell stays too, and whoever was following them
+     * @param k Place in hops of the enemy staying
+     */
+    private void stay(int[] hops, int k){
+        for(int j=follower[k];j!=-1 && hops[j]!=Cells.NONE;j=follower[j]){
+            hops[j] = Cells.NONE;
+        }
+    }
+
+    /**
+     * Does enemy a win a cell over enemy b this turn?
+     */
+    private static boolean beats(int a, int b, int turn){
+        int pa = priority(a, turn);
+        int pb = priority(b, turn);
+        if(pa != pb){
+            return pa > pb;
+        }
+        return a < b;
+    }
+
+    /**
+     * Scrambles an enemy's number with the turn, so who wins changes from
+     * turn to turn
+     */
+    static int priority(int id, int turn){
+        int h = id*0x9E3779B9 + turn*0x85EBCA6B;
+        h ^= h >>> 16;
+        h *= 0x7FEB352D;
+        h ^= h >>> 15;
+        return h;
+    }
+}
@@ -0,0 +1,365 @@
+package controller;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import model.Constants;
+import model.pathfinding.Algorithm;
+import model.pathfinding.DistanceField;
+import model.pathfinding.PathfindingContext;
+import model.tileboard.LightField;
+
+/**
+ * Works out how the enemies will answer the player's next move while the
+ * game is waiting for it. The player can only step left, right, down or up,
+ * so all four turns are played out on a copy of the board on a background
+ * thread, and when the key comes the enemies' hops are already known.
+ *
+ * The turn is played out the same way FrameHandler does it: with
+ * SIMULTANEOUS_MOVES everyone picks a hop from the same board and
+ * HopResolver settles the clashes and who follows whom, otherwise one
+ * enemy at a time in the order they will move, each seeing the ones
+ * before it where they ended up.
+ * Only ENEMY_PATHING 0 and 1 are worked out ahead, the other ways of
+ * pathing keep state across turns that can't be copied cheaply.
+ *
+ * Each answer belongs to the state it was worked out from: the board, where
+ * the player stands and faces, and the turn. If any of them has changed
+ * when the key comes, the answer is thrown away and the turn is played the
+ * normal way.
+ */
+class SpeculativeTurn {
+    /** the moves in the order FrameHandler checks the keys: left, right, down, up */
+    private static final int[] MOVE_ROW = {0, 0, 1, -1};
+    private static final int[] MOVE_COL = {-1, 1, 0, 0};
+
+    private ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactory(){
+        @Override
+        public Thread newThread(Runnable r){
+            Thread thread = new Thread(r, "speculative turn");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** the state the pending answers are for */
+    private boolean[][] board;
+    private int version;
+    private int turn;
+    private int playerRow;
+    private int playerCol;
+    private int beamRow;
+    private int beamCol;
+    private Future<int[][]> pending;
+
+    /**
+     * Starts working out the four answers, unless they are already being
+     * worked out for this same state. Cheap to call every frame.
+     * @param turn Counts turns, changes every time the enemies move
+     * @param board The walls and enemies, see ObstacleOverlay.board
+     * @param version Version of the board
+     * @param walls The static walls
+     * @param playerRow Row of the player
+     * @param playerCol Column of the player
+     * @param beamRow Which way the flashlight points, in rows
+     * @param beamCol Which way the flashlight points, in columns
+     * @param light The cells lit now, which will be the last light when the player moves
+     * @param enemyIds Numbers of the enemies in model.enemies, in the order they will move
+     * @param enemyRows Rows of the enemies, in the order they will move
+     * @param enemyCols Columns of the enemies, in the same order
+     * @param closeEnough Whether each enemy is near enough to give chase
+     */
+    void speculate(int turn, boolean[][] board, int version, boolean[][] walls,
+            int playerRow, int playerCol, int beamRow, int beamCol, LightField light,
+            int[] enemyIds, int[] enemyRows, int[] enemyCols, boolean[] closeEnough){
+        if(Constants.ENEMY_PATHING != 0 && Constants.ENEMY_PATHING != 1){
+            return;
+        }
+        if(isFor(turn, board, version, playerRow, playerCol, beamRow, beamCol)){
+            return;
+        }
+        discard();
+        this.turn = turn;
+        this.board = board;
+        this.version = version;
+        this.playerRow = playerRow;
+        this.playerCol = playerCol;
+        this.beamRow = beamRow;
+        this.beamCol = beamCol;
+
+        //copy everything the worker reads, the game goes on changing the originals
+        LightField lastLight = new LightField(light.rows(), light.cols());
+        lastLight.copyFrom(light);
+        boolean[][] blocked = new boolean[board.length][];
+        for(int i=0;i<board.length;i++){
+            blocked[i] = board[i].clone();
+        }
+        //calcEnemyMovement counts the turn before anyone moves
+        pending = worker.submit(new Turns(turn + 1, walls, blocked, playerRow, playerCol, beamRow, beamCol,
+                lastLight, enemyIds.clone(), enemyRows.clone(), enemyCols.clone(), closeEnough.clone()));
+    }
+
+    /**
+     * Takes the answer for a move if it was worked out for the state the
+     * move was made from. Either way the pending answers are used up.
+     * @param turn Counts turns, as given to speculate
+     * @param board The walls and enemies, before the move
+     * @param version Version of the board
+     * @param fromRow Row the player moved from
+     * @param fromCol Column the player moved from
+     * @param toRow Row the player moved to
+     * @param toCol Column the player moved to
+     * @param beamRow Which way the flashlight points, in rows
+     * @param beamCol Which way the flashlight points, in columns
+     * @return Cell id each enemy hops to, in the order they move, Cells.NONE
+     *      for one that stays put. null if there is no answer for this.
+     */
+    int[] take(int turn, boolean[][] board, int version, int fromRow, int fromCol,
+            int toRow, int toCol, int beamRow, int beamCol){
+        if(pending == null){
+            return null;
+        }
+        Future<int[][]> answers = pending;
+        boolean valid = matches(turn, board, version, fromRow, fromCol, beamRow, beamCol);
+        pending = null;
+        if(!valid || !answers.isDone()){
+            //not ready yet is as good as wrong, playing the turn now is no slower
+            answers.cancel(true);
+            return null;
+        }
+        try {
+            for(int m=0;m<MOVE_ROW.length;m++){
+                if(fromRow + MOVE_ROW[m] == toRow && fromCol + MOVE_COL[m] == toCol){
+                    return answers.get()[m];
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Speculative turn failed: "+e.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * Are answers pending for this state? Lets the caller skip gathering
+     * everything speculate needs when they are.
+     */
+    boolean isFor(int turn, boolean[][] board, int version,
+            int playerRow, int playerCol, int beamRow, int beamCol){
+        return pending != null && matches(turn, board, version, playerRow, playerCol, beamRow, beamCol);
+    }
+
+    /**
+     * Forgets the pending answers
+     */
+    void discard(){
+        if(pending != null){
+            pending.cancel(true);
+            pending = null;
+        }
+    }
+
+    private boolean matches(int turn, boolean[][] board, int version,
+            int playerRow, int playerCol, int beamRow, int beamCol){
+        return turn == this.turn && board == this.board && version == this.version
+                && playerRow == this.playerRow && playerCol == this.playerCol
+                && beamRow == this.beamRow && beamCol == this.beamCol;
+    }
+
+    /**
+     * Plays out the enemies' turn for each of the four moves
+     */
+    private static class Turns implements Callable<int[][]> {
+        private int turn;
+        private boolean[][] walls;
+        private boolean[][] board;
+        private int rows;
+        private int cols;
+        private int playerRow;
+        private int playerCol;
+        private int beamRow;
+        private int beamCol;
+        private LightField lastLight;
+        private int[] enemyIds;
+        private int[] enemyRows;
+        private int[] enemyCols;
+        private boolean[] closeEnough;
+
+        private PathfindingContext context = new PathfindingContext();
+        private DistanceField field = new DistanceField();
+        private DistanceField wallsField = new DistanceField();
+        private HopResolver resolver = new HopResolver();
+
+        Turns(int turn, boolean[][] walls, boolean[][] board, int playerRow, int playerCol, int beamRow, int beamCol,
+                LightField lastLight, int[] enemyIds, int[] enemyRows, int[] enemyCols, boolean[] closeEnough) {
+            this.turn = turn;
+            this.walls = walls;
+            this.board = board;
+            this.rows = board.length;
+            this.cols = board[0].length;
+            this.playerRow = playerRow;
+            this.playerCol = playerCol;
+            this.beamRow = beamRow;
+            this.beamCol = beamCol;
+            this.lastLight = lastLight;
+            this.enemyIds = enemyIds;
+            this.enemyRows = enemyRows;
+            this.enemyCols = enemyCols;
+            this.closeEnough = closeEnough;
+        }
+
+        @Override
+        public int[][] call(){
+            int[][] answers = new int[MOVE_ROW.length][];
+            for(int m=0;m<MOVE_ROW.length;m++){
+                int row = playerRow + MOVE_ROW[m];
+                int col = playerCol + MOVE_COL[m];
+                //same test as the player's move, no answer for a move that can't be made
+                if(row >= 0 && col >= 0 && row < rows && col < cols && !walls[row][col]){
+                    answers[m] = play(row, col);
+                }
+                if(Thread.currentThread().isInterrupted()){
+                    break;
+                }
+            }
+            return answers;
+        }
+
+        /**
+         * The enemies' turn after the player steps onto a cell, the same
+         * rules as FrameHandler.calcEnemyMovement
+         * @return Cell each enemy hops to, or Cells.NONE
+         */
+        private int[] play(int row, int col){
+            LightField currLight = new LightField(rows, cols);
+            currLight.beam(walls, row, col, beamRow, beamCol, Constants.BEAM_LENGTH);
+            int player = row*cols + col;
+            if(Constants.SIMULTANEOUS_MOVES){
+                return playTogether(row, col, currLight);
+            }
+
+            boolean[][] blocked = new boolean[rows][];
+            for(int i=0;i<rows;i++){
+                blocked[i] = board[i].clone();
+            }
+            int[] standing = new int[rows*cols];
+            for(int i=0;i<enemyRows.length;i++){
+                standing[enemyRows[i]*cols + enemyCols[i]]++;
+            }
+            boolean fieldReady = false;
+
+            int[] hops = new int[enemyRows.length];
+            for(int i=0;i<enemyRows.length;i++){
+                hops[i] = -1;
+                int r = enemyRows[i];
+                int c = enemyCols[i];
+                if(!closeEnough[i] || lastLight.isLit(r, c)){
+                    continue;
+                }
+                int hop;
+                if(Constants.ENEMY_PATHING == 1){
+                    if(!fieldReady){
+                        field.compute(blocked, row, col, 1);
+                        fieldReady = true;
+                    }
+                    if(field.hasTiedHops(r, c)){
+                        hop = context.nextHop(blocked, r*cols + c, player, Algorithm.ASTAR, 1);
+                    }else{
+                        hop = field.nextHop(r, c);
+                    }
+                }else{
+                    hop = context.nextHop(blocked, r*cols + c, player, Algorithm.ASTAR, 1);
+                }
+                if(hop == -1){
+                    continue;
+                }
+                int hopRow = hop/cols;
+                int hopCol = hop%cols;
+                boolean inLight = currLight.isLit(hop) || lastLight.isLit(hop);
+                if((inLight && hop != player) || blocked[hopRow][hopCol]){
+                    continue;
+                }
+                hops[i] = hop;
+                standing[r*cols + c]--;
+                standing[hop]++;
+                if(update(blocked, standing, r, c) && fieldReady){
+                    field.cellChanged(r, c);
+                }
+                if(update(blocked, standing, hopRow, hopCol) && fieldReady){
+                    field.cellChanged(hopRow, hopCol);
+                }
+            }
+            return hops;
+        }
+
+        /**
+         * The enemies' turn when they all pick their hops from the board as
+         * it was, the same rules as FrameHandler.proposeHops
+         * @return Cell each enemy hops to, or Cells.NONE
+         */
+        private int[] playTogether(int row, int col, LightField currLight){
+            int player = row*cols + col;
+            boolean fieldReady = false;
+            boolean wallsFieldReady = false;
+            int[] hops = new int[enemyRows.length];
+            int[] from = new int[enemyRows.length];
+            for(int i=0;i<enemyRows.length;i++){
+                hops[i] = -1;
+                int r = enemyRows[i];
+                int c = enemyCols[i];
+                from[i] = r*cols + c;
+                if(!closeEnough[i] || lastLight.isLit(r, c)){
+                    continue;
+                }
+                int hop;
+                if(Constants.ENEMY_PATHING == 1){
+                    if(!fieldReady){
+                        field.compute(board, row, col, 1);
+                        fieldReady = true;
+                    }
+                    if(field.hasTiedHops(r, c)){
+                        hop = context.nextHop(board, r*cols + c, player, Algorithm.ASTAR, 1);
+                    }else{
+                        hop = field.nextHop(r, c);
+                    }
+                }else{
+                    hop = context.nextHop(board, r*cols + c, player, Algorithm.ASTAR, 1);
+                }
+                if(hop == -1){
+                    //walled off by the others, follow them in case they move on
+                    if(!wallsFieldReady){
+                        wallsField.compute(walls, row, col, 1);
+                        wallsFieldReady = true;
+                    }
+                    hop = wallsField.nextHop(r, c);
+                }
+                if(hop == -1){
+                    continue;
+                }
+                boolean inLight = currLight.isLit(hop) || lastLight.isLit(hop);
+                if(inLight && hop != player){
+                    continue;
+                }
+                hops[i] = hop;
+            }
+            resolver.resolve(hops, from, enemyIds, hops.length, turn, board);
+            return hops;
+        }
+
+        /**
+         * Sets a cell of the copied board from its walls and who is standing there
+         * @return Whether it flipped
+         */
+        private boolean update(boolean[][] blocked, int[] standing, int row, int col){
+            boolean now = walls[row][col] || standing[row*cols + col] > 0;
+            boolean changed = now != blocked[row][col];
+            blocked[row][col] = now;
+            return changed;
+        }
+    }
+}
@@ -46,5 +46,90 @@ public class Constants {
     public static final int KEYBOARD_LOOK_REACH = 200;
     
     public static final boolean DO_SAVES = true;
+    
+    /**
+     * How chupacabras find their way to the player each turn
+     * 0 - every enemy runs its own A* search
+     * 1 - one distance field from the player is shared by all enemies,
+     *     enemies only search when the field shows a tie between hops
+     * 2 - every enemy keeps its own incremental planner for the whole level,
+     *     each turn only repairs what changed since the last
+     * 3 - all enemies plan together around each other's moves, closest
+     *     to the player first, so they don't jam up behind each other
+     * 4 - enemies look their hop up in a table of every hop on the level
+     *     built when it loads, and only search when another enemy is on it
+     * 5 - enemies search the hierarchical pathfinder, which plans over
+     *     clusters of the board and is repaired as enemies move
+     * 6 - every enemy runs its own A* search, guided by distances from a
+     *     few landmarks found the first time it is needed
+     * 7 - every enemy searches for the cheapest path by TERRAIN_COSTS,
+     *     so they go around the ground they don't like walking on
+     */
+    public static final int ENEMY_PATHING = 1;
+    
+    /**
+     * Width and height in tiles of the clusters the hierarchical
+     * pathfinder splits a board into
+     */
+    public static final int PATH_CLUSTER_SIZE = 10;
+    
+    /**
+     * Most paths the enemies' path cache keeps
+     */
+    public static final int PATH_CACHE_SIZE = 64;
+    
+    /**
+     * How many landmarks to find distances from when a level loads,
+     * for the ALT heuristic
+     */
+    public static final int LANDMARK_COUNT = 6;
+    
+    /**
+     * How many turns ahead enemies plan around each other when
+     * ENEMY_PATHING is 3
+     */
+    public static final int COOPERATIVE_WINDOW = 8;
+    
+    /**
+     * Most open cells a level can have for its table of hops to be built
+     * when ENEMY_PATHING is 4, the table takes one byte per pair of cells
+     */
+    public static final int NEXT_HOP_TABLE_CELLS = 2000;
+    
+    /**
+     * Cost of stepping onto each kind of background tile for weighted
+     * pathfinding, in hundredths of a step. Indexed by the numbers in the
+     * background files: nothing, grass, dirt, then the tutorial tiles.
+     */
+    public static final int[] TERRAIN_COSTS = {100, 100, 150, 100, 100, 100, 100};
+    
+    /**
+     * Work out the enemies' answer to each of the player's moves in the
+     * background while waiting for a key. Only when ENEMY_PATHING is 0 or 1.
+     */
+    public static final boolean SPECULATIVE_TURNS = true;
+    
+    /**
+     * How far from the player, in pixels, an enemy can be and still chase
+     */
+    public static final int CHASE_DISTANCE = 550;
+    
+    /**
+     * Side in tiles of the buckets enemies are sorted into, so each turn
+     * only looks at the ones near the player
+     */
+    public static final int ENEMY_BUCKET_SIZE = 8;
+    
+    /**
+     * Enemies all pick their hops at once from the board as it was before
+     * anyone moved, and a cell more than one wants goes to whoever has the
+     * higher priority that turn. An enemy can follow another into the cell
+     * it is leaving, so a line of them keeps moving together. The searches
+     * run in parallel and the turn comes out the same whatever order the
+     * enemies are kept in. When false
+     * they move one at a time, each seeing the ones before it where they
+     * ended up. ENEMY_PATHING 3 always plans everyone together instead.
+     */
+    public static final boolean SIMULTANEOUS_MOVES = true;
 
 }
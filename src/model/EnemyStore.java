@@ -0,0 +1,108 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Every chupacabra on the level, kept as plain arrays indexed by enemy
+ * number instead of one Tile each. The turn only needs where an enemy is
+ * and which way it faces, so that is all that is kept for every enemy.
+ *
+ * Drawing is done by Tiles that are only lent to the enemies on screen
+ * (see FrameHandler.bindEnemySprites), so a level can hold far more
+ * enemies than it could hold MovieClips.
+ */
+public class EnemyStore {
+    private static final Tile.Direction[] DIRECTIONS = Tile.Direction.values();
+
+    /** number of enemies, they are numbered 0 up to this */
+    public int count;
+    public int[] row = new int[16];
+    public int[] col = new int[16];
+    /** Tile.Direction ordinal */
+    public byte[] dir = new byte[16];
+    /** the Tile drawing each enemy, null while it is off screen */
+    public Tile[] sprite = new Tile[16];
+
+    private int cols;
+    /** cell -> enemy standing on it, or -1 */
+    private int[] at;
+
+    /**
+     * Adds an enemy
+     * @param row Row of its cell
+     * @param col Column of its cell
+     * @param facing Which way it faces
+     * @return Its number
+     */
+    public int add(int row, int col, Tile.Direction facing){
+        if(count == this.row.length){
+            int size = count*2;
+            this.row = Arrays.copyOf(this.row, size);
+            this.col = Arrays.copyOf(this.col, size);
+            dir = Arrays.copyOf(dir, size);
+            sprite = Arrays.copyOf(sprite, size);
+        }
+        int i = count++;
+        this.row[i] = row;
+        this.col[i] = col;
+        dir[i] = (byte) facing.ordinal();
+        if(at != null){
+            at[row*cols + col] = i;
+        }
+        return i;
+    }
+
+    /**
+     * Tells the store the size of the board, once the level is read, so
+     * enemies can be looked up by cell
+     * @param rows Rows of the board
+     * @param cols Columns of the board
+     */
+    public void setBoard(int rows, int cols){
+        this.cols = cols;
+        at = new int[rows*cols];
+        Arrays.fill(at, -1);
+        for(int i=0;i<count;i++){
+            at[row[i]*cols + col[i]] = i;
+        }
+    }
+
+    /**
+     * Moves an enemy to another cell. An enemy may follow another into the
+     * cell it is leaving, and may be moved first, so the cell this one leaves
+     * is only cleared if no one has moved into it yet.
+     * @param i The enemy
+     * @param row Its new row
+     * @param col Its new column
+     */
+    public void move(int i, int row, int col){
+        int from = this.row[i]*cols + this.col[i];
+        if(at[from] == i){
+            at[from] = -1;
+        }
+        this.row[i] = row;
+        this.col[i] = col;
+        at[row*cols + col] = i;
+    }
+
+    /**
+     * The enemy standing on a cell
+     * @param row Row of the cell
+     * @param col Column of the cell
+     * @return Its number, or -1 if there is none
+     */
+    public int at(int row, int col){
+        if(row < 0 || col < 0 || row*cols + col >= at.length || col >= cols){
+            return -1;
+        }
+        return at[row*cols + col];
+    }
+
+    public Tile.Direction getDir(int i){
+        return DIRECTIONS[dir[i]];
+    }
+
+    public void setDir(int i, Tile.Direction facing){
+        dir[i] = (byte) facing.ordinal();
+    }
+}
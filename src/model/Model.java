@@ -14,6 +14,7 @@ import view.SaveFile;
 import view.SoundEffect;
 import model.animation.Animation;
 import model.tileboard.GameTiles;
+import model.tileboard.LightField;
 import controller.Controller;
 
 /**
@@ -88,11 +89,12 @@ public class Model {
     public int lastDir; //inv: cannot be -1
     public boolean playerHasTurned;
     
-    public ArrayList<Point> currLight;
-    public ArrayList<Point> lastLight;
+    /** cells the flashlight shines on now, and shone on before the last move */
+    public LightField currLight;
+    public LightField lastLight;
     public Area flashlight;
     
-    public ArrayList<Tile> enemies;
+    public EnemyStore enemies;
     public Tile gameOverEnemy;
     
     public Tile battery;
@@ -154,7 +156,7 @@ public class Model {
         clearMenus();
         removeAllChildren();
         gameState = State.WAIT_FOR_PLAYER;
-        enemies = new ArrayList<Tile>();
+        enemies = new EnemyStore();
         duckingEnemies = new ArrayList<Tile>();
         lastDir = 1;
         playerHasTurned = false;
@@ -165,9 +167,6 @@ public class Model {
         levelShiftY = 0;
         moveTimer = 0;
 
-        lastLight = new ArrayList<Point>();
-        currLight = new ArrayList<Point>();
-        
         lastMouse = new Point();
         
         
@@ -181,6 +180,8 @@ public class Model {
         loadLevelEssentials();
         gameboard.setBackground(levelBackgrounds[n]);
         gameboard.setForeground(levelForegrounds[n]);
+        lastLight = new LightField(gameboard.rows, gameboard.cols);
+        currLight = new LightField(gameboard.rows, gameboard.cols);
         centerOnPlayer();
         levelTimer = 0;
     }
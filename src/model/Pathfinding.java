@@ -1,7 +1,17 @@
 package model;
 
 import java.awt.Point;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import model.pathfinding.Algorithm;
+import model.pathfinding.Landmarks;
+import model.pathfinding.PathRequest;
+import model.pathfinding.PathfindingContext;
+import model.pathfinding.Terrain;
 
 /**
  * A class with static methods for pathfinding. The pathfinding must be a 2d Array
@@ -59,28 +69,29 @@ import java.util.LinkedList;
  *        X   o    
  *        X     E  
  *        
+ * The searches themselves live in PathfindingContext. These static methods
+ * use one context per thread, so they are safe to call from several threads
+ * at once and do not allocate scratch space on every call. findPaths spreads
+ * a batch of queries over a pool of threads that way.
+ *        
  * @author Nick Cheng
  *
  */
 public class Pathfinding {
-    private static int ROWS;
-    private static int COLS;
-    private static boolean[][] walls;
-    private static Point start;
-    private static Point end;
     
-    /**This lets it consider taking a diagonal at a slightly higher cost
-     * It will not cut through a diagonal spot if it is a super pinchy point
-     */
-    private static boolean TAKE_DIAGONAL;
-    /**
-     * This will have it fill in the diagonal spots when walking around corners as to not cut corners
-     */
-    private static boolean FILL_DIAGONAL;
-    /**
-     * This will have it fill in the diagonal spots so that the entire path is only cardinal directions
-     */
-    private static boolean FILL_DIAGONAL_ALWAYS;
+    /** each thread searches with its own scratch buffers */
+    private static final ThreadLocal<PathfindingContext> CONTEXT = new ThreadLocal<PathfindingContext>(){
+        @Override
+        protected PathfindingContext initialValue(){
+            return new PathfindingContext();
+        }
+    };
+
+    /** runs batches of paths, its threads are started as they are needed */
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+    
+    /** a batch is split until each piece has at most this many queries */
+    private static final int BATCH_SPLIT = 8;
 
     /**
      * Default path-finding method with all options available.
@@ -93,349 +104,198 @@ public class Pathfinding {
      * @return A linked list representing path from beginning to end. (path includes endpoint)
      */
     public static LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end, Boolean useHeuristic, int diag){
-        ROWS = obstacles.length;
-        COLS = obstacles[0].length;
-        walls = obstacles;
-        
-        Pathfinding.start = start;
-        Pathfinding.end = end;
-        
-        if(diag == 0){
-            //don't consider diagonal at all
-            TAKE_DIAGONAL = false;
-            FILL_DIAGONAL = false;
-            FILL_DIAGONAL_ALWAYS = false;
-        }else if(diag == 1){
-            //use diagonal but fill in, so end result is only cardinal directions
-            TAKE_DIAGONAL = true;
-            FILL_DIAGONAL = true;
-            FILL_DIAGONAL_ALWAYS = true;
-        }else if(diag == 2){
-            //use diagonal fill in only spots to prevent cutting corners
-            TAKE_DIAGONAL = true;
-            FILL_DIAGONAL = true;
-            FILL_DIAGONAL_ALWAYS = false;
-        }else if(diag == 3){
-            //use diagonal and don't fill in anything
-            TAKE_DIAGONAL = true;
-            FILL_DIAGONAL = false;
-            FILL_DIAGONAL_ALWAYS = false;
-        }else{
-            System.out.println("diag must be between 0..3");
-            return null;
-        }
-        
-        if(useHeuristic){
-            return astar();
-        }else{
-            return dijkstra();
-        }
+        return CONTEXT.get().findPath(obstacles, start, end, useHeuristic, diag);
     }
-    
+
     /**
-     * A simple path-finding method that uses heuristic and no diagonalization.
+     * Path-finding with a choice of search. Algorithm.JUMP_POINT crosses open
+     * areas in a few jumps instead of expanding every cell, it needs diagonal
+     * movement and runs A* when diag is 0.
      * @param obstacles A 2-D binary int array. 0 for open, 1 for wall.
      * @param start A starting point (x,y) i.e. (column,row)
      * @param end An ending point (x,y) i.e. (column,row)
+     * @param algorithm Which search to run
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See class specification for more details
      * @return A linked list representing path from beginning to end. (path includes endpoint)
      */
-    public static LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end){
-        return findPath(obstacles, start, end, true, 0);
+    public static LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end, Algorithm algorithm, int diag){
+        return CONTEXT.get().findPath(obstacles, start, end, algorithm, diag);
     }
-    
+
     /**
-     * A simple path-finding method that uses heuristic and fills diagonals
+     * Shortest path with A* guided by landmarks (ALT), which expands far fewer
+     * cells than the Euclidean heuristic on maze-like levels.
      * @param obstacles A 2-D binary int array. 0 for open, 1 for wall.
      * @param start A starting point (x,y) i.e. (column,row)
      * @param end An ending point (x,y) i.e. (column,row)
+     * @param landmarks Distance tables for the level, e.g. GameTiles.getLandmarks()
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See class specification for more details
      * @return A linked list representing path from beginning to end. (path includes endpoint)
      */
-    public static LinkedList<Point> findPathFillDiag(boolean[][] obstacles, Point start, Point end){
-        return findPath(obstacles, start, end, true, 1);
+    public static LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end, Landmarks landmarks, int diag){
+        return CONTEXT.get().findPath(obstacles, start, end, landmarks, diag);
     }
     
     /**
-     * A simple path-finding method that uses heuristic and non-corner cutting diagonalization
+     * Cheapest path where stepping onto some cells costs more than others
      * @param obstacles A 2-D binary int array. 0 for open, 1 for wall.
      * @param start A starting point (x,y) i.e. (column,row)
      * @param end An ending point (x,y) i.e. (column,row)
+     * @param terrain Cost of every cell, e.g. GameTiles.getTerrain()
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See class specification for more details
      * @return A linked list representing path from beginning to end. (path includes endpoint)
      */
-    public static LinkedList<Point> findPathWithDiag(boolean[][] obstacles, Point start, Point end){
-        return findPath(obstacles, start, end, true, 2);
+    public static LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end, Terrain terrain, int diag){
+        return CONTEXT.get().findPath(obstacles, start, end, terrain, diag);
     }
-    
-    
+
     /**
-     * Dijkstra's algorithm.
-     * @return The guaranteed shortest path from start to end.
+     * Just the first step of the path findPath would return, for a searcher
+     * that only moves one cell a turn. Builds no list.
+     * @param obstacles A 2-D binary int array. 0 for open, 1 for wall.
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param algorithm Which search to run
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See class specification for more details
+     * @return Cell id (row*cols + col) of the first step, or -1 if there is
+     *      no path or start is already end
      */
-    private static LinkedList<Point> dijkstra() {
-        double[][] dist = new double[walls.length][walls[0].length];
-        boolean[][] visited = new boolean [walls.length][walls[0].length];
-        Point[][] previous = new Point [walls.length][walls[0].length];
-        LinkedList<Point> searchQueue = new LinkedList<Point>();
-        
-        //Initialize arrays
-        for(int i=0;i<walls.length;i++){
-            for (int j=0;j<walls[i].length;j++){
-                dist[i][j] = Double.MAX_VALUE;
-                visited[i][j] = false;
-                previous[i][j] = null;
-            }
-        }
-        
-        //Prepare start point
-        dist[start.y][start.x] = 0;
-        searchQueue.add(new Point(start.x,start.y));
-        
-        while(searchQueue.size()>0){
-            //Find closest point
-            Point smallest = searchQueue.getFirst(); //u
-            double smallestDist = dist[smallest.y][smallest.x];
-            for (Point p : searchQueue){
-                double newDist = dist[p.y][p.x];
-                if(newDist<smallestDist){
-                    smallest = p;
-                    smallestDist = newDist;
-                }
-            }    
-            
-            //End search if found end point
-            if (smallest.equals(end)){
-                return reconstructPath(previous);
-            }
-            
-            searchQueue.remove(smallest);
-            visited[smallest.y][smallest.x] = true;
-            
-            //Process neighbors
-            LinkedList<Point> neighbors = getNeighbors(smallest);
-            for(Point p : neighbors){
-                double weight = (isDiagonal(p,smallest) ? 1.41 : 1.0);
-                double alt = smallestDist + weight;
-                if (alt < dist[p.y][p.x]){
-                    dist[p.y][p.x] = alt;
-                    previous[p.y][p.x] = smallest;
-                    if(!visited[p.y][p.x]){
-                        searchQueue.add(p);
-                    }
-                }
-            }
-        }
-        
-        //Reconstruct path
-        LinkedList<Point> daPath = new LinkedList<Point>();
-        Point u = end;
-        while (previous[u.y][u.x] != null){
-            daPath.add(u);
-            Point prev = previous[u.y][u.x];
-            if(FILL_DIAGONAL && isDiagonal(u,prev)) {
-                    if(FILL_DIAGONAL_ALWAYS || !(isOpen(u.x,prev.y) && isOpen(prev.x,u.y))){
-                        if(isOpen(u.x,prev.y)){
-                            daPath.add(new Point(u.x,prev.y));
-                        }else{
-                            daPath.add(new Point(prev.x,u.y));
-                        }
-                    }
-                }
-            u = prev;
-        }
-        
-        return null;
+    public static int nextHop(boolean[][] obstacles, Point start, Point end, Algorithm algorithm, int diag){
+        return CONTEXT.get().nextHop(obstacles, start, end, algorithm, diag);
     }
 
     /**
-     * A* Pathfinding algorithm. Uses Euclidean distance as heuristic.
-     * @return A path from start to end. Not guaranteed to be exact shortest.
+     * nextHop with the cells given as ids (row*cols + col), for callers that
+     * keep their positions packed and don't want to make Points every turn
+     * @param obstacles A 2-D binary int array. 0 for open, 1 for wall.
+     * @param start Cell id to start from
+     * @param end Cell id to go to
+     * @param algorithm Which search to run
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See class specification for more details
+     * @return Cell id of the first step, or -1 if there is no path or start
+     *      is already end
      */
-    private static LinkedList<Point> astar() {
-        //distance from start
-        double[][] dist = new double[walls.length][walls[0].length];
-        //distance from start to point, plus estimated distance from point to end
-        double[][] fscore = new double[walls.length][walls[0].length];
-        boolean[][] visited = new boolean [walls.length][walls[0].length];
-        Point[][] previous = new Point [walls.length][walls[0].length];
-        LinkedList<Point> searchQueue = new LinkedList<Point>();
-        
-        //Initialize data structures
-        for(int i=0;i<walls.length;i++){
-            for (int j=0;j<walls[i].length;j++){
-                dist[i][j] = Double.MAX_VALUE;
-                fscore[i][j] = Double.MAX_VALUE;
-                visited[i][j] = false;
-                previous[i][j] = null;
-            }
-        }
-        
-        //prepare first point
-        dist[start.y][start.x] = 0;
-        searchQueue.add(new Point(start.x,start.y));
-        
-        while(searchQueue.size()>0){
-            //find smallest f-score, not distance
-            Point smallest = searchQueue.getFirst(); //u
-            double smallestFscore = fscore[smallest.y][smallest.x];
-            for (Point p : searchQueue){
-                double newDist = fscore[p.y][p.x];
-                if(newDist<smallestFscore){
-                    smallest = p;
-                    smallestFscore = newDist;
-                }
-            }    
-            
-            //End search if found end point
-            if (smallest.equals(end)){
-                return reconstructPath(previous);
-            }
-            
-            searchQueue.remove(smallest);
-            visited[smallest.y][smallest.x] = true;
-            
-            //Process neighbors
-            LinkedList<Point> neighbors = getNeighbors(smallest);
-            for(Point p : neighbors){
-                double weight = (isDiagonal(p,smallest) ? 1.41 : 1.0);
-                double alt = dist[smallest.y][smallest.x] + weight;
-                double altF = alt + eDistance(smallest,end);
-                if (alt < dist[p.y][p.x]){
-                    dist[p.y][p.x] = alt;
-                    fscore[p.y][p.x] = altF;
-                    previous[p.y][p.x] = smallest;
-                    if(!visited[p.y][p.x]){
-                        searchQueue.add(p);
-                    }
-                }
-            }
-        }
-        
-        //Reconstruct path
-        LinkedList<Point> daPath = new LinkedList<Point>();
-        Point u = end;
-        while (previous[u.y][u.x] != null){
-            daPath.add(u);
-            Point prev = previous[u.y][u.x];
-            if(FILL_DIAGONAL && isDiagonal(u,prev)) {
-                    if(FILL_DIAGONAL_ALWAYS || !(isOpen(u.x,prev.y) && isOpen(prev.x,u.y))){
-                        if(isOpen(u.x,prev.y)){
-                            daPath.add(new Point(u.x,prev.y));
-                        }else{
-                            daPath.add(new Point(prev.x,u.y));
-                        }
-                    }
-                }
-            u = prev;
-        }
-        
-        return null;
+    public static int nextHop(boolean[][] obstacles, int start, int end, Algorithm algorithm, int diag){
+        return CONTEXT.get().nextHop(obstacles, start, end, algorithm, diag);
     }
     
     /**
-     * Reconstructs the path from the beginning to end
-     * @return
+     * Finds many paths on one board at once, split over every processor.
+     * Each query is searched on its own exactly as findPath would, so the
+     * result is the same however many threads take part.
+     * @param obstacles A 2-D binary int array. 0 for open, 1 for wall.
+     *      Must not change until the batch is done.
+     * @param batch The queries
+     * @return The path for each query, in the same order as the queries
+     *      (null where there is no path)
      */
-    private static LinkedList<Point> reconstructPath(Point[][] previous){
-        LinkedList<Point> finalPath = new LinkedList<Point>();
-        Point u = end;
-        while (previous[u.y][u.x] != null){
-            finalPath.add(0,u);
-            Point prev = previous[u.y][u.x];
-            if(FILL_DIAGONAL && isDiagonal(u,prev)) {
-                    if(FILL_DIAGONAL_ALWAYS || !(isOpen(u.x,prev.y) && isOpen(prev.x,u.y))){
-                        if(isOpen(u.x,prev.y)){
-                            finalPath.add(0,new Point(u.x,prev.y));
-                        }else{
-                            finalPath.add(0,new Point(prev.x,u.y));
-                        }
-                    }
-                }
-            u = prev;
-        }
-        
-        
-        
-        return finalPath;
+    public static ArrayList<LinkedList<Point>> findPaths(boolean[][] obstacles, List<PathRequest> batch){
+        return findPaths(obstacles, batch, POOL);
     }
     
     /**
-     * Is a cell an open spot on board?
-     * I.E. Not off the board, and not a wall?
-     * @param x X coordinate of point
-     * @param y Y coordinate of point
-     * @return
+     * Finds many paths on one board at once, on a given pool
+     * @param obstacles A 2-D binary int array. 0 for open, 1 for wall.
+     *      Must not change until the batch is done.
+     * @param batch The queries
+     * @param pool The threads to search on
+     * @return The path for each query, in the same order as the queries
+     *      (null where there is no path)
      */
-    private static boolean isOpen(int x, int y){
-        if (x<0 || y < 0) return false;
-        if (x >= COLS || y >= ROWS) return false;
-        return !walls[y][x];
+    public static ArrayList<LinkedList<Point>> findPaths(boolean[][] obstacles, List<PathRequest> batch, ForkJoinPool pool){
+        PathRequest[] requests = batch.toArray(new PathRequest[batch.size()]);
+        //filled in place, so the workers only ever set their own slots
+        ArrayList<LinkedList<Point>> paths = new ArrayList<LinkedList<Point>>(requests.length);
+        for(int i=0;i<requests.length;i++){
+            paths.add(null);
+        }
+        pool.invoke(new BatchSearch(obstacles, requests, paths, 0, requests.length));
+        return paths;
     }
     
     /**
-     * Finds neighbors of a given cell. If diagonal is on,
-     * it can consider all 8 neighbors, otherwise just 4
-     * cardinal neighbors
-     * @param p Cell to find neighbors for
-     * @return A linked list of neighbors
+     * The pool findPaths runs on, for other work that splits into many
+     * independent searches
+     * @return The shared pool
      */
-    private static LinkedList<Point> getNeighbors (Point p) {
-        LinkedList<Point> n = new LinkedList<Point>();
+    public static ForkJoinPool getPool(){
+        return POOL;
+    }
     
-        if(isOpen(p.x-1,p.y))
-            n.add(new Point(p.x-1,p.y));
-        if(isOpen(p.x,p.y-1))
-            n.add(new Point(p.x,p.y-1));
-        if(isOpen(p.x+1,p.y))
-            n.add(new Point(p.x+1,p.y));
-        if(isOpen(p.x,p.y+1))
-            n.add(new Point(p.x,p.y+1));
+    /**
+     * Searches a range of a batch, splitting it in half until it is small.
+     * Every query writes only its own slot of the results.
+     */
+    private static class BatchSearch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
         
-        if(TAKE_DIAGONAL){
-            if(isOpen(p.x-1,p.y)||isOpen(p.x,p.y-1)){
-                if (isOpen(p.x-1,p.y-1))
-                    n.add(new Point(p.x-1,p.y-1));
-            }
-            if(isOpen(p.x+1,p.y)||isOpen(p.x,p.y-1)){
-                if (isOpen(p.x+1,p.y-1))
-                    n.add(new Point(p.x+1,p.y-1));
-            }
-            if(isOpen(p.x-1,p.y)||isOpen(p.x,p.y+1)){
-                if (isOpen(p.x-1,p.y+1))
-                    n.add(new Point(p.x-1,p.y+1));
-            }
-            if(isOpen(p.x+1,p.y)||isOpen(p.x,p.y+1)){
-                if (isOpen(p.x+1,p.y+1))
-                    n.add(new Point(p.x+1,p.y+1));
-            }
+        private boolean[][] obstacles;
+        private PathRequest[] requests;
+        private ArrayList<LinkedList<Point>> paths;
+        private int from;
+        private int to;
+        
+        BatchSearch(boolean[][] obstacles, PathRequest[] requests, ArrayList<LinkedList<Point>> paths, int from, int to) {
+            this.obstacles = obstacles;
+            this.requests = requests;
+            this.paths = paths;
+            this.from = from;
+            this.to = to;
         }
-       
         
-        return n;
+        @Override
+        protected void compute(){
+            if(to - from <= BATCH_SPLIT){
+                //the worker's own context, so workers never share buffers
+                PathfindingContext context = CONTEXT.get();
+                for(int i=from;i<to;i++){
+                    PathRequest request = requests[i];
+                    paths.set(i, context.findPath(obstacles, request.start, request.end, request.algorithm, request.diag));
+                }
+            }else{
+                int mid = (from + to) >>> 1;
+                invokeAll(new BatchSearch(obstacles, requests, paths, from, mid),
+                        new BatchSearch(obstacles, requests, paths, mid, to));
+            }
+        }
     }
     
     /**
-     * Returns false if two cells are adjacent, returns
-     * true if two cells are diagonal.
-     * PRECONDITION: Cells have to be touching by edge or corner
-     * @param p1 First cell
-     * @param p2 Second cell
-     * @return Whether cells are diagonal
+     * A simple path-finding method that uses heuristic and no diagonalization.
+     * @param obstacles A 2-D binary int array. 0 for open, 1 for wall.
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
      */
-    private static boolean isDiagonal (Point p1, Point p2){
-        boolean sameX = (p2.x - p1.x) == 0;
-        boolean sameY = (p2.y - p1.y) == 0;
-        return !sameX && !sameY;
+    public static LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end){
+        return findPath(obstacles, start, end, true, 0);
     }
     
     /**
-     * Euclidean distance between two points
-     * @param p1 First point
-     * @param p2 Second point
-     * @return Double value of Euclidean distance
+     * A simple path-finding method that uses heuristic and fills diagonals
+     * @param obstacles A 2-D binary int array. 0 for open, 1 for wall.
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
+     */
+    public static LinkedList<Point> findPathFillDiag(boolean[][] obstacles, Point start, Point end){
+        return findPath(obstacles, start, end, true, 1);
+    }
+    
+    /**
+     * A simple path-finding method that uses heuristic and non-corner cutting diagonalization
+     * @param obstacles A 2-D binary int array. 0 for open, 1 for wall.
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
      */
-    private static double eDistance (Point p1, Point p2){
-        int xdis = p2.x - p1.x;
-        int ydis = p2.y - p1.y;
-        return Math.sqrt(xdis*xdis + ydis*ydis);
+    public static LinkedList<Point> findPathWithDiag(boolean[][] obstacles, Point start, Point end){
+        return findPath(obstacles, start, end, true, 2);
     }
 
 }
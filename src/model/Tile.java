@@ -45,6 +45,15 @@ public class Tile extends MovieClip{
         return new Point(col,row);
     };
     
+    /**
+     * Position as a cell id, so nothing is allocated
+     * @param cols Columns of the board
+     * @return row*cols + col
+     */
+    public int getCell (int cols){
+        return row*cols + col;
+    }
+    
     public void moveABit(){
         x += bitX;
         y += bitY;
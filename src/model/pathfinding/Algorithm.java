@@ -0,0 +1,28 @@
+package model.pathfinding;
+
+/**
+ * The search a PathfindingContext runs
+ */
+public enum Algorithm {
+    /** Guaranteed shortest path, expands every cell closer than the end */
+    DIJKSTRA,
+    /** Euclidean heuristic, more efficient but not guaranteed to be exact shortest */
+    ASTAR,
+    /**
+     * Jump Point Search. Shortest path like Dijkstra, but only stops at cells
+     * where the path could turn, so open areas are crossed in a few jumps.
+     * Needs diagonal movement, with diag 0 it runs A* instead.
+     */
+    JUMP_POINT,
+    /**
+     * Shortest path, searching from both ends at once and meeting in the
+     * middle, so a long path costs two small searches instead of one big one.
+     */
+    BIDIRECTIONAL,
+    /**
+     * Shortest path for diag 0, where every step costs the same, spreading
+     * out a whole row of the board at a time on a bit packed copy of it.
+     * With diagonals it runs Dijkstra instead.
+     */
+    BREADTH_FIRST
+}
@@ -0,0 +1,189 @@
+package model.pathfinding;
+
+/**
+ * Breadth first search for boards without diagonal steps, run on the board
+ * packed 64 cells to a long. Each row is a few words, and one layer of the
+ * search spreads across a whole word with a couple of shifts and ands, so a
+ * wide open board is crossed 64 cells at a time instead of one cell per poll.
+ *
+ * Every step costs the same without diagonals, so the layers are the exact
+ * distances and the walk back through them is a shortest path.
+ *
+ * The search spreads out from the end. Only the layer number mod 3 is kept
+ * for each cell, in two bit planes. Neighboring cells are never more than
+ * one layer apart, so mod 3 is enough to tell the layer one closer to the end
+ * from the layer one farther, and the walk from the start picks whichever
+ * neighbor is one closer.
+ */
+final class BitWavefront {
+    private int rows;
+    private int cols;
+    /** longs per row */
+    private int words;
+
+    /** bit set for every open cell, bits past the last column stay 0 */
+    private long[] open;
+    private long[] visited;
+    /** layer mod 3 of each visited cell, low bit and high bit */
+    private long[] low;
+    private long[] high;
+    /** the last layer and the one being found */
+    private long[] front;
+    private long[] next;
+    private int cellsVisited;
+
+    /**
+     * Packs a board into bits, reusing the buffers if they are big enough
+     * @param walls A 2-D boolean array. true for wall.
+     */
+    void load(boolean[][] walls){
+        rows = walls.length;
+        cols = walls[0].length;
+        words = (cols + 63) >>> 6;
+        int size = rows*words;
+        if(open == null || open.length < size){
+            open = new long[size];
+            visited = new long[size];
+            low = new long[size];
+            high = new long[size];
+            front = new long[size];
+            next = new long[size];
+        }
+        for(int r=0;r<rows;r++){
+            boolean[] row = walls[r];
+            int base = r*words;
+            for(int w=0;w<words;w++){
+                long bits = 0;
+                int end = Math.min(cols, (w+1) << 6);
+                for(int c=w << 6;c<end;c++){
+                    if(!row[c]){
+                        bits |= 1L << (c & 63);
+                    }
+                }
+                open[base + w] = bits;
+            }
+        }
+    }
+
+    /**
+     * Spreads layers out from the end until they reach the start. The start
+     * may be blocked (someone standing on it), it is still reached.
+     * @param start Start cell (row*cols + col)
+     * @param end End cell
+     * @return Whether the start was reached
+     */
+    boolean search(int start, int end){
+        int size = rows*words;
+        for(int i=0;i<size;i++){
+            visited[i] = 0;
+            low[i] = 0;
+            high[i] = 0;
+            front[i] = 0;
+            next[i] = 0;
+        }
+        cellsVisited = 1;
+        if(start == end){
+            return true;
+        }
+        if(!isSet(open, end)){
+            return false;
+        }
+        mark(visited, end);
+        mark(front, end);
+
+        int startIndex = (start/cols)*words + ((start%cols) >>> 6);
+        long startBit = 1L << ((start%cols) & 63);
+        long startOpen = open[startIndex] & startBit;
+        open[startIndex] |= startBit;
+
+        int frontLow = end/cols;
+        int frontHigh = frontLow;
+        int layer = 0;
+        boolean found = false;
+        while(!found && frontLow <= frontHigh){
+            layer = layer == 2 ? 0 : layer+1;
+            int from = Math.max(0, frontLow-1);
+            int to = Math.min(rows-1, frontHigh+1);
+            int nextLow = rows;
+            int nextHigh = -1;
+            for(int r=from;r<=to;r++){
+                int base = r*words;
+                for(int w=0;w<words;w++){
+                    int i = base + w;
+                    long f = front[i];
+                    //left and right inside the word, then across word edges
+                    long spread = f | (f << 1) | (f >>> 1);
+                    if(w > 0) spread |= front[i-1] >>> 63;
+                    if(w < words-1) spread |= front[i+1] << 63;
+                    if(r > 0) spread |= front[i-words];
+                    if(r < rows-1) spread |= front[i+words];
+                    long reached = spread & open[i] & ~visited[i];
+                    next[i] = reached;
+                    if(reached != 0){
+                        visited[i] |= reached;
+                        if((layer & 1) != 0) low[i] |= reached;
+                        if((layer & 2) != 0) high[i] |= reached;
+                        cellsVisited += Long.bitCount(reached);
+                        if(r < nextLow) nextLow = r;
+                        nextHigh = r;
+                    }
+                }
+            }
+            //the old front becomes the next buffer, it has to be empty
+            for(int i=frontLow*words;i<(frontHigh+1)*words;i++){
+                front[i] = 0;
+            }
+            long[] swap = front;
+            front = next;
+            next = swap;
+            frontLow = nextLow;
+            frontHigh = nextHigh;
+            found = (visited[startIndex] & startBit) != 0;
+        }
+
+        open[startIndex] = (open[startIndex] & ~startBit) | startOpen;
+        return found;
+    }
+
+    /**
+     * One step from a cell toward the end, after a search that reached it.
+     * Ties go to the first in neighbor order (left, up, right, down).
+     * @param cell A cell the search reached
+     * @return The neighbor one layer closer to the end, -1 if cell is the end
+     */
+    int step(int cell){
+        int want = (layer(cell) + 2) % 3;
+        int x = cell%cols;
+        int y = cell/cols;
+        if(x > 0 && isCloser(cell-1, want)) return cell-1;
+        if(y > 0 && isCloser(cell-cols, want)) return cell-cols;
+        if(x < cols-1 && isCloser(cell+1, want)) return cell+1;
+        if(y < rows-1 && isCloser(cell+cols, want)) return cell+cols;
+        return -1;
+    }
+
+    /**
+     * @return Number of cells the last search reached
+     */
+    int cellsVisited(){
+        return cellsVisited;
+    }
+
+    private boolean isCloser(int cell, int want){
+        return isSet(visited, cell) && layer(cell) == want;
+    }
+
+    private int layer(int cell){
+        return (isSet(low, cell) ? 1 : 0) | (isSet(high, cell) ? 2 : 0);
+    }
+
+    private boolean isSet(long[] bits, int cell){
+        int col = cell%cols;
+        return (bits[(cell/cols)*words + (col >>> 6)] & (1L << (col & 63))) != 0;
+    }
+
+    private void mark(long[] bits, int cell){
+        int col = cell%cols;
+        bits[(cell/cols)*words + (col >>> 6)] |= 1L << (col & 63);
+    }
+}
@@ -0,0 +1,133 @@
+package model.pathfinding;
+
+/**
+ * The frontier of a search with whole number priorities and a known largest
+ * step (Dial's algorithm). There is one bucket per priority in a ring just
+ * longer than the largest step, so everything queued fits in the ring at
+ * once, and adding, moving and polling a cell are all O(1) instead of the
+ * O(log n) of a heap. Polling walks the ring forward to the next bucket
+ * that has anything in it.
+ *
+ * Each bucket is a list threaded through per cell arrays, so a cell is in at
+ * most one bucket and moving it is just unlinking it. Ties are served in the
+ * order they were queued.
+ */
+final class BucketQueue {
+    /** bucket -> first and last cell in it, -1 when empty */
+    private int[] head;
+    private int[] tail;
+    /** cell -> neighbors in its bucket's list */
+    private int[] next;
+    private int[] prev;
+    /** cell -> its bucket, or -1 if it is not queued */
+    private int[] bucket;
+    private int size;
+    /** priority of the bucket polling is at, nothing queued is smaller */
+    private int current;
+
+    /**
+     * Creates a queue for cells numbered 0..cells-1
+     * @param cells Number of cells on the board (rows*cols)
+     */
+    BucketQueue(int cells) {
+        next = new int[cells];
+        prev = new int[cells];
+        bucket = new int[cells];
+        for(int i=0;i<cells;i++){
+            bucket[i] = -1;
+        }
+        head = new int[0];
+        tail = new int[0];
+    }
+
+    /**
+     * Empties the queue and sizes the ring for a new search
+     * @param maxStep The largest amount a priority can grow in one step
+     */
+    void clear(int maxStep){
+        for(int b=0;b<head.length;b++){
+            for(int c=head[b];c!=-1;c=next[c]){
+                bucket[c] = -1;
+            }
+        }
+        if(head.length < maxStep+1){
+            head = new int[maxStep+1];
+            tail = new int[maxStep+1];
+        }
+        for(int b=0;b<head.length;b++){
+            head[b] = -1;
+            tail[b] = -1;
+        }
+        size = 0;
+        current = 0;
+    }
+
+    boolean isEmpty(){
+        return size == 0;
+    }
+
+    boolean contains(int cell){
+        return bucket[cell] != -1;
+    }
+
+    /**
+     * Queues a cell. Its priority must be no smaller than the last one
+     * polled, and no more than the largest step past it.
+     * @param cell The cell id
+     * @param priority Its priority
+     */
+    void add(int cell, int priority){
+        int b = priority % head.length;
+        bucket[cell] = b;
+        next[cell] = -1;
+        prev[cell] = tail[b];
+        if(tail[b] == -1){
+            head[b] = cell;
+        }else{
+            next[tail[b]] = cell;
+        }
+        tail[b] = cell;
+        size++;
+    }
+
+    /**
+     * Moves a queued cell to a new priority
+     * @param cell The cell id
+     * @param priority Its new priority
+     */
+    void update(int cell, int priority){
+        unlink(cell);
+        add(cell, priority);
+    }
+
+    /**
+     * Takes the cell with the smallest priority off the queue
+     * @return The cell id
+     */
+    int poll(){
+        int b = current % head.length;
+        while(head[b] == -1){
+            current++;
+            b = current % head.length;
+        }
+        int cell = head[b];
+        unlink(cell);
+        return cell;
+    }
+
+    private void unlink(int cell){
+        int b = bucket[cell];
+        if(prev[cell] == -1){
+            head[b] = next[cell];
+        }else{
+            next[prev[cell]] = next[cell];
+        }
+        if(next[cell] == -1){
+            tail[b] = prev[cell];
+        }else{
+            prev[next[cell]] = prev[cell];
+        }
+        bucket[cell] = -1;
+        size--;
+    }
+}
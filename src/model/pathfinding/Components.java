@@ -0,0 +1,191 @@
+package model.pathfinding;
+
+/**
+ * Which open cells of a board are connected to which, kept with union-find,
+ * so a search that can't succeed is turned down before it starts instead of
+ * exploring every cell it can reach.
+ *
+ * A diagonal step is only allowed past an open cell, and that cell joins
+ * both ends of the step with straight steps, so cells connected by straight
+ * steps are exactly the cells connected at every diagonal level.
+ *
+ * Union-find can join sets but not split them. When a cell opens it gets
+ * a fresh node, since its old one may sit in a set it is no longer part of,
+ * and is joined to its neighbors right away. When a cell is blocked it can
+ * only cut a region in two if its open neighbors are not already joined
+ * around it, and only then are the labels found again, the next time they
+ * are asked for.
+ */
+public class Components {
+    /** up, right, down, left, and the corner after each going clockwise */
+    private static final int[] SIDE_X = {0, 1, 0, -1};
+    private static final int[] SIDE_Y = {-1, 0, 1, 0};
+    private static final int[] CORNER_X = {1, 1, -1, -1};
+    private static final int[] CORNER_Y = {-1, 1, 1, -1};
+
+    private boolean[][] walls;
+    private int rows;
+    private int cols;
+    /** union-find node of each cell */
+    private int[] node;
+    /** nodes in use, a board gets twice its cells before starting over */
+    private int nodes;
+    private int[] parent;
+    private int[] size;
+    /** a blocked cell may have split a region since the labels were found */
+    private boolean stale;
+
+    /**
+     * Labels the open regions of a board
+     * @param obstacles A 2-D boolean array. true for wall. Kept, not copied,
+     *      call cellChanged whenever a cell of it flips.
+     */
+    public Components(boolean[][] obstacles) {
+        walls = obstacles;
+        rows = obstacles.length;
+        cols = rows > 0 ? obstacles[0].length : 0;
+        node = new int[rows*cols];
+        parent = new int[2*rows*cols];
+        size = new int[2*rows*cols];
+        rebuild();
+    }
+
+    /**
+     * Tells the labels one cell of the board has been flipped between
+     * open and blocked
+     * @param row Row of the cell that changed
+     * @param col Column of the cell that changed
+     */
+    public void cellChanged(int row, int col){
+        if(stale){
+            //everything is found again on the next question anyway
+            return;
+        }
+        int cell = row*cols + col;
+        if(!walls[row][col]){
+            if(nodes == parent.length){
+                stale = true;
+                return;
+            }
+            node[cell] = nodes;
+            parent[nodes] = nodes;
+            size[nodes] = 1;
+            nodes++;
+            if(col > 0 && !walls[row][col-1]) union(cell, cell-1);
+            if(row > 0 && !walls[row-1][col]) union(cell, cell-cols);
+            if(col < cols-1 && !walls[row][col+1]) union(cell, cell+1);
+            if(row < rows-1 && !walls[row+1][col]) union(cell, cell+cols);
+        }else if(mightSplit(row, col)){
+            stale = true;
+        }
+    }
+
+    /**
+     * Could a searcher on one cell ever reach another?
+     * @param startRow Row of the searcher, may be blocked (it is standing there)
+     * @param startCol Column of the searcher
+     * @param endRow Row of the goal
+     * @param endCol Column of the goal
+     * @return false if no path at any diagonal level exists
+     */
+    public boolean canReach(int startRow, int startCol, int endRow, int endCol){
+        if(startRow == endRow && startCol == endCol){
+            return true;
+        }
+        if(walls[endRow][endCol]){
+            return false;
+        }
+        if(stale){
+            rebuild();
+        }
+        int goal = find(endRow*cols + endCol);
+        if(!walls[startRow][startCol]){
+            return find(startRow*cols + startCol) == goal;
+        }
+        //off a blocked start, the first step is straight or past a straight neighbor
+        int start = startRow*cols + startCol;
+        if(startCol > 0 && !walls[startRow][startCol-1] && find(start-1) == goal) return true;
+        if(startRow > 0 && !walls[startRow-1][startCol] && find(start-cols) == goal) return true;
+        if(startCol < cols-1 && !walls[startRow][startCol+1] && find(start+1) == goal) return true;
+        if(startRow < rows-1 && !walls[startRow+1][startCol] && find(start+cols) == goal) return true;
+        return false;
+    }
+
+    /**
+     * Walks the eight cells around a newly blocked cell. If its open straight
+     * neighbors are all joined to each other through the open corners between
+     * them, anything that went through the cell can go around it instead.
+     * @return Whether the open straight neighbors fall into more than one group
+     */
+    private boolean mightSplit(int row, int col){
+        int open = 0;
+        for(int i=0;i<4;i++){
+            if(Neighbors.isOpen(walls, col+SIDE_X[i], row+SIDE_Y[i])) open++;
+        }
+        if(open <= 1){
+            return false;
+        }
+        //count open sides that don't continue on from an open side before them
+        int groups = 0;
+        for(int i=0;i<4;i++){
+            int before = (i+3) % 4;
+            boolean joined = Neighbors.isOpen(walls, col+SIDE_X[before], row+SIDE_Y[before])
+                    && Neighbors.isOpen(walls, col+CORNER_X[before], row+CORNER_Y[before]);
+            if(Neighbors.isOpen(walls, col+SIDE_X[i], row+SIDE_Y[i]) && !joined){
+                groups++;
+            }
+        }
+        //every side joined to the one before it is a full ring, one group
+        return groups > 1;
+    }
+
+    /**
+     * Finds every label again from scratch
+     */
+    private void rebuild(){
+        for(int i=0;i<node.length;i++){
+            node[i] = i;
+            parent[i] = i;
+            size[i] = 1;
+        }
+        nodes = node.length;
+        for(int r=0;r<rows;r++){
+            for(int c=0;c<cols;c++){
+                if(walls[r][c]) continue;
+                int cell = r*cols + c;
+                if(c < cols-1 && !walls[r][c+1]) union(cell, cell+1);
+                if(r < rows-1 && !walls[r+1][c]) union(cell, cell+cols);
+            }
+        }
+        stale = false;
+    }
+
+    /**
+     * @return The root node of a cell's set
+     */
+    private int find(int cell){
+        int n = node[cell];
+        while(parent[n] != n){
+            //path halving
+            parent[n] = parent[parent[n]];
+            n = parent[n];
+        }
+        return n;
+    }
+
+    /**
+     * Joins the sets of two cells
+     */
+    private void union(int a, int b){
+        int ra = find(a);
+        int rb = find(b);
+        if(ra == rb) return;
+        if(size[ra] < size[rb]){
+            int swap = ra;
+            ra = rb;
+            rb = swap;
+        }
+        parent[rb] = ra;
+        size[ra] += size[rb];
+    }
+}
@@ -0,0 +1,279 @@
+package model.pathfinding;
+
+/**
+ * Plans the moves of many searchers chasing one goal together, so they
+ * file past each other instead of piling up behind whoever planned first
+ * (Windowed Hierarchical Cooperative A*).
+ *
+ * Searchers are planned one after another, each through space and time: a
+ * step is a move to a straight neighbor or a wait, and takes one turn. Each
+ * searcher's planned cells for the next few turns go into a reservation
+ * table, and the searchers planned after it go around those cells, or wait
+ * for them to clear. Only a short window of turns is planned, past it the
+ * distance to the goal over the walls alone is used as the rest of the cost.
+ * That distance is found once per turn with a single search out from the goal
+ * and guides every searcher, so each plan only looks at a few cells.
+ *
+ * Each turn call begin, then addAgent for every searcher that will move and
+ * hold for every one that won't, then nextHop for the movers in the order
+ * they will actually move.
+ */
+public class CooperativePlanner {
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    private int window;
+    private boolean[][] walls;
+    private int rows;
+    private int cols;
+    private int cells;
+    private int goal;
+
+    /** steps from each cell to the goal over the walls alone */
+    private int[] distance;
+    private int[] queue;
+
+    /** reservation table, (turn*cells + cell) -> searcher id, valid when reservedStamp == stamp */
+    private int[] reserved;
+    private int[] reservedStamp;
+    /** cells of searchers that haven't been planned yet, they are still standing there next turn */
+    private int[] waiting;
+    private int stamp;
+    private int nextId;
+
+    /** the search through space and time, by state (turn*cells + cell) */
+    private int[] previous;
+    private int[] seen;
+    private int generation;
+    private OpenSet open;
+
+    /**
+     * Creates a planner
+     * @param window How many turns ahead each searcher plans around the others
+     */
+    public CooperativePlanner(int window) {
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Starts a new turn, forgetting every reservation
+     * @param obstacles The static walls, true for wall. Searchers are not
+     *      walls here, they are kept apart by the reservations.
+     * @param goalRow Row of the goal
+     * @param goalCol Column of the goal
+     */
+    public void begin(boolean[][] obstacles, int goalRow, int goalCol){
+        walls = obstacles;
+        rows = obstacles.length;
+        cols = obstacles[0].length;
+        if(distance == null || distance.length != rows*cols){
+            cells = rows*cols;
+            distance = new int[cells];
+            queue = new int[cells];
+            waiting = new int[cells];
+            int states = cells*(window+1);
+            reserved = new int[states];
+            reservedStamp = new int[states];
+            previous = new int[states];
+            seen = new int[states];
+            open = new OpenSet(states);
+            stamp = 0;
+            generation = 0;
+        }
+        stamp = Neighbors.nextGeneration(stamp, reservedStamp, waiting);
+        nextId = 1;
+        goal = goalRow*cols + goalCol;
+        findDistances();
+    }
+
+    /**
+     * Tells the planner a searcher stands on a cell and will be planned later
+     * this turn
+     * @param row Row of the searcher
+     * @param col Column of the searcher
+     */
+    public void addAgent(int row, int col){
+        waiting[row*cols + col] = stamp;
+    }
+
+    /**
+     * Reserves a cell for the whole window, for a searcher that won't move
+     * this turn
+     * @param row Row of the searcher
+     * @param col Column of the searcher
+     */
+    public void hold(int row, int col){
+        int id = nextId++;
+        int cell = row*cols + col;
+        for(int t=0;t<=window;t++){
+            reserve(t*cells + cell, id);
+        }
+    }
+
+    /**
+     * Steps from a cell to the goal over the walls alone, ignoring the
+     * other searchers. Planning the closest searchers first lets the ones
+     * behind follow them.
+     * @param row Row of the cell
+     * @param col Column of the cell
+     * @return Number of steps, or Integer.MAX_VALUE if the goal can't be reached
+     */
+    public int distance(int row, int col){
+        return distance[row*cols + col];
+    }
+
+    /**
+     * Plans one searcher around everyone planned before it and reserves its
+     * moves for the searchers after it
+     * @param row Row of the searcher
+     * @param col Column of the searcher
+     * @return Cell id (row*cols + col) of its move this turn, or -1 if it
+     *      should stay where it is
+     */
+    public int nextHop(int row, int col){
+        int start = row*cols + col;
+        waiting[start] = 0;
+        int id = nextId++;
+        if(start == goal || distance[start] == INFINITE){
+            hold(row, col);
+            return -1;
+        }
+
+        int last = search(start, id);
+        if(last == -1){
+            //boxed in for now, stay put
+            hold(row, col);
+            return -1;
+        }
+
+        //reserve the plan, and the cell it ends on for the rest of the window
+        int end = last % cells;
+        for(int t=last/cells+1;t<=window;t++){
+            reserve(t*cells + end, id);
+        }
+        int first = last;
+        for(int s=last;s!=-1;s=previous[s]){
+            reserve(s, id);
+            if(s/cells == 1){
+                first = s;
+            }
+        }
+        int hop = first % cells;
+        return hop == start ? -1 : hop;
+    }
+
+    /**
+     * A* through space and time from the start, around the reservations
+     * @return The state the plan ends on, at the goal or at the end of the
+     *      window, or -1 if every move is taken
+     */
+    private int search(int start, int id){
+        generation = Neighbors.nextGeneration(generation, seen);
+        open.clear();
+
+        seen[start] = generation;
+        previous[start] = -1;
+        open.add(start, distance[start], distance[start]);
+
+        while(!open.isEmpty()){
+            int s = open.poll();
+            int u = s % cells;
+            int t = s / cells;
+            if(u == goal || t == window){
+                return s;
+            }
+            int x = u % cols;
+            int y = u / cols;
+            //wait, then left, up, right, down
+            relax(s, u, u, t, id);
+            if(x > 0) relax(s, u, u-1, t, id);
+            if(y > 0) relax(s, u, u-cols, t, id);
+            if(x < cols-1) relax(s, u, u+1, t, id);
+            if(y < rows-1) relax(s, u, u+cols, t, id);
+        }
+        return -1;
+    }
+
+    /**
+     * Tries the step from state s, cell u at turn t, to cell v a turn later.
+     * Every step and every wait takes one turn, so a state's cost is its
+     * turn and the first time a state is reached is the cheapest.
+     */
+    private void relax(int s, int u, int v, int t, int id){
+        if(walls[v/cols][v%cols] || distance[v] == INFINITE){
+            return;
+        }
+        int next = (t+1)*cells + v;
+        if(seen[next] == generation){
+            return;
+        }
+        int holder = owner(next);
+        if(holder != 0 && holder != id){
+            return;
+        }
+        if(v != u){
+            if(t == 0 && waiting[v] == stamp){
+                //someone still standing there when this searcher moves
+                return;
+            }
+            //two searchers swapping cells would walk through each other
+            int other = owner(t*cells + v);
+            if(other != 0 && other == owner((t+1)*cells + u)){
+                return;
+            }
+        }
+        seen[next] = generation;
+        previous[next] = s;
+        open.add(next, t+1 + distance[v], distance[v]);
+    }
+
+    private void reserve(int state, int id){
+        reserved[state] = id;
+        reservedStamp[state] = stamp;
+    }
+
+    /**
+     * @return Id of the searcher holding a cell at a turn, 0 if it's free
+     */
+    private int owner(int state){
+        return reservedStamp[state] == stamp ? reserved[state] : 0;
+    }
+
+    /**
+     * Breadth first search out from the goal over the walls
+     */
+    private void findDistances(){
+        for(int i=0;i<cells;i++){
+            distance[i] = INFINITE;
+        }
+        if(walls[goal/cols][goal%cols]){
+            return;
+        }
+        int head = 0;
+        int tail = 0;
+        distance[goal] = 0;
+        queue[tail++] = goal;
+        while(head < tail){
+            int u = queue[head++];
+            int x = u % cols;
+            int y = u / cols;
+            int d = distance[u] + 1;
+            if(x > 0) tail = visit(u-1, d, tail);
+            if(y > 0) tail = visit(u-cols, d, tail);
+            if(x < cols-1) tail = visit(u+1, d, tail);
+            if(y < rows-1) tail = visit(u+cols, d, tail);
+        }
+    }
+
+    /**
+     * Queues an open cell the first time the search from the goal reaches it
+     * @return The new end of the queue
+     */
+    private int visit(int cell, int d, int tail){
+        if(walls[cell/cols][cell%cols] || distance[cell] != INFINITE){
+            return tail;
+        }
+        distance[cell] = d;
+        queue[tail] = cell;
+        return tail+1;
+    }
+}
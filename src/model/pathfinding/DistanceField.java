@@ -0,0 +1,325 @@
+package model.pathfinding;
+
+/**
+ * A map of how far every cell is from one goal cell, found with a single
+ * Dijkstra search outward from the goal. Since every move can be walked both
+ * ways, any number of searchers heading to that goal can read their next hop
+ * off the map in O(1) instead of each running their own search.
+ *
+ * The field keeps a reference to the board it was computed on. When a cell of
+ * that board is flipped, cellChanged repairs just the part of the field it
+ * affects. When the goal moves, call compute again, the field keeps its
+ * buffers between computations.
+ */
+public class DistanceField {
+    /** distances closer than this are treated as equal, they are sums of 1.0 and 1.41 */
+    private static final double TIE = 1e-9;
+
+    private boolean[][] walls;
+    private int cols;
+    private int goal = -1;
+    private boolean takeDiagonal;
+    private boolean fillDiagonal;
+    private boolean fillDiagonalAlways;
+
+    /** distance to goal, valid when seen[cell] == generation */
+    private double[] dist;
+    private int[] seen;
+    private int generation;
+    private OpenSet open;
+    private int[] neighbors = new int[8];
+
+    /** cells that lost their shortest routes in a repair, when affected[cell] == mark */
+    private int[] affected;
+    private int[] affectedList;
+    private int mark;
+
+    /**
+     * Fills in the distance from every reachable cell to a goal
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param goalRow Row of the goal cell
+     * @param goalCol Column of the goal cell
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     */
+    public void compute(boolean[][] obstacles, int goalRow, int goalCol, int diag){
+        walls = obstacles;
+        cols = obstacles[0].length;
+        int cells = obstacles.length*cols;
+        if(dist == null || dist.length < cells){
+            dist = new double[cells];
+            seen = new int[cells];
+            open = new OpenSet(cells);
+            generation = 0;
+        }
+        generation = Neighbors.nextGeneration(generation, seen);
+        open.clear();
+
+        takeDiagonal = Neighbors.takesDiagonal(diag);
+        fillDiagonal = Neighbors.fillsDiagonal(diag);
+        fillDiagonalAlways = Neighbors.fillsDiagonalAlways(diag);
+
+        goal = goalRow*cols + goalCol;
+        seen[goal] = generation;
+        dist[goal] = 0;
+        open.add(goal, 0);
+        propagate();
+    }
+
+    /**
+     * Repairs the field after one cell of the board it was computed on has
+     * been flipped between open and blocked, e.g. when a searcher moves off
+     * or onto it. Only the cells whose distance changes are searched again.
+     * Flip and repair one cell at a time.
+     * @param row Row of the cell that changed
+     * @param col Column of the cell that changed
+     */
+    public void cellChanged(int row, int col){
+        int cell = row*cols + col;
+        if(walls[row][col]){
+            raise(cell);
+        }else{
+            lower(cell);
+        }
+    }
+
+    /**
+     * A cell was blocked, so distances can only grow. First find every
+     * cell that has lost all of its shortest routes, working outward in
+     * order of old distance, then search those cells again from the
+     * cells around them that were not affected.
+     */
+    private void raise(int cell){
+        if(affected == null || affected.length < dist.length){
+            affected = new int[dist.length];
+            affectedList = new int[dist.length];
+            mark = 0;
+        }
+        mark = Neighbors.nextGeneration(mark, affected);
+        int count = 0;
+
+        //the cell itself, and its sides since diagonals squeezing past it may be gone
+        open.clear();
+        pushIfSeen(cell);
+        int x = cell%cols;
+        int y = cell/cols;
+        if(x > 0) pushIfSeen(cell-1);
+        if(y > 0) pushIfSeen(cell-cols);
+        if(x < cols-1) pushIfSeen(cell+1);
+        if(y < walls.length-1) pushIfSeen(cell+cols);
+
+        while(!open.isEmpty()){
+            int v = open.poll();
+            if(v == goal) continue;
+
+            boolean supported = false;
+            int n = Neighbors.collect(walls, v, takeDiagonal, neighbors);
+            if(!walls[v/cols][v%cols]){
+                for(int i=0;i<n;i++){
+                    int p = neighbors[i];
+                    if(seen[p] == generation && affected[p] != mark
+                            && dist[p] + Neighbors.weight(cols, p, v) <= dist[v] + TIE){
+                        supported = true;
+                        break;
+                    }
+                }
+            }
+            if(!supported){
+                affected[v] = mark;
+                affectedList[count++] = v;
+                for(int i=0;i<n;i++){
+                    int p = neighbors[i];
+                    if(affected[p] != mark && !open.contains(p)){
+                        pushIfSeen(p);
+                    }
+                }
+            }
+        }
+
+        for(int i=0;i<count;i++){
+            seen[affectedList[i]] = 0;
+        }
+        open.clear();
+        for(int i=0;i<count;i++){
+            int v = affectedList[i];
+            if(!walls[v/cols][v%cols]){
+                reseed(v);
+            }
+        }
+        propagate();
+    }
+
+    /**
+     * A cell was opened, so distances can only shrink. Reseed the cell
+     * and its sides (diagonals past it may now be allowed) and let the
+     * improvements spread.
+     */
+    private void lower(int cell){
+        open.clear();
+        reseed(cell);
+        int x = cell%cols;
+        int y = cell/cols;
+        if(x > 0 && !walls[y][x-1]) reseed(cell-1);
+        if(y > 0 && !walls[y-1][x]) reseed(cell-cols);
+        if(x < cols-1 && !walls[y][x+1]) reseed(cell+1);
+        if(y < walls.length-1 && !walls[y+1][x]) reseed(cell+cols);
+        propagate();
+    }
+
+    private void pushIfSeen(int cell){
+        if(seen[cell] == generation){
+            open.add(cell, dist[cell]);
+        }
+    }
+
+    /**
+     * Gives an open cell the best distance its neighbors offer, if
+     * that is better than what it has, and queues it to spread
+     */
+    private void reseed(int v){
+        double best = Double.MAX_VALUE;
+        int n = Neighbors.collect(walls, v, takeDiagonal, neighbors);
+        for(int i=0;i<n;i++){
+            int p = neighbors[i];
+            if(seen[p] == generation){
+                best = Math.min(best, dist[p] + Neighbors.weight(cols, p, v));
+            }
+        }
+        if(best == Double.MAX_VALUE) return;
+        if(seen[v] != generation || best < dist[v]){
+            seen[v] = generation;
+            dist[v] = best;
+            if(open.contains(v)){
+                open.update(v, best);
+            }else{
+                open.add(v, best);
+            }
+        }
+    }
+
+    /**
+     * Runs Dijkstra from whatever is queued
+     */
+    private void propagate(){
+        while(!open.isEmpty()){
+            int u = open.poll();
+            int n = Neighbors.collect(walls, u, takeDiagonal, neighbors);
+            for(int i=0;i<n;i++){
+                int p = neighbors[i];
+                double alt = dist[u] + Neighbors.weight(cols, u, p);
+                if(seen[p] != generation){
+                    seen[p] = generation;
+                    dist[p] = alt;
+                    open.add(p, alt);
+                }else if(alt < dist[p]){
+                    dist[p] = alt;
+                    if(open.contains(p)){
+                        open.update(p, alt);
+                    }else{
+                        open.add(p, alt);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * How far a cell is from the goal
+     * @param row Row of the cell
+     * @param col Column of the cell
+     * @return The distance, or Double.MAX_VALUE if the goal can't be reached
+     */
+    public double distance(int row, int col){
+        int cell = row*cols + col;
+        if(seen[cell] != generation || goalBlocked()) return Double.MAX_VALUE;
+        return dist[cell];
+    }
+
+    /**
+     * The first step from a cell toward the goal. The cell itself may be
+     * blocked (a searcher standing on it), only where it steps has to be open.
+     * Diagonal steps are filled in the same way Pathfinding fills them in.
+     * @param row Row of the cell to step from
+     * @param col Column of the cell to step from
+     * @return Cell id (row*cols + col) of the next hop, or -1 if the goal
+     *      can't be reached or the cell is the goal
+     */
+    public int nextHop(int row, int col){
+        int from = row*cols + col;
+        if(from == goal || goalBlocked()) return -1;
+
+        int best = -1;
+        double bestDist = Double.MAX_VALUE;
+        int n = Neighbors.collect(walls, from, takeDiagonal, neighbors);
+        for(int i=0;i<n;i++){
+            int p = neighbors[i];
+            if(seen[p] != generation) continue;
+            double d = dist[p] + Neighbors.weight(cols, from, p);
+            if(d < bestDist){
+                best = p;
+                bestDist = d;
+            }
+        }
+        return filled(from, best);
+    }
+
+    /**
+     * Are there equally short routes from a cell to the goal that
+     * start with different hops? A search from the cell settles such
+     * ties by its own search order, which the field can't know.
+     * @param row Row of the cell to step from
+     * @param col Column of the cell to step from
+     * @return Whether nextHop is only one of several equally good hops
+     */
+    public boolean hasTiedHops(int row, int col){
+        int from = row*cols + col;
+        if(from == goal || goalBlocked()) return false;
+
+        double bestDist = Double.MAX_VALUE;
+        int n = Neighbors.collect(walls, from, takeDiagonal, neighbors);
+        for(int i=0;i<n;i++){
+            int p = neighbors[i];
+            if(seen[p] != generation) continue;
+            bestDist = Math.min(bestDist, dist[p] + Neighbors.weight(cols, from, p));
+        }
+
+        int hop = -1;
+        for(int i=0;i<n;i++){
+            int p = neighbors[i];
+            if(seen[p] != generation) continue;
+            if(dist[p] + Neighbors.weight(cols, from, p) <= bestDist + TIE){
+                int h = filled(from, p);
+                if(hop == -1){
+                    hop = h;
+                }else if(h != hop){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Nothing can step onto a goal that has been blocked since the
+     * field was computed
+     */
+    private boolean goalBlocked(){
+        return walls[goal/cols][goal%cols];
+    }
+
+    /**
+     * Applies the diagonal fill in to a step
+     * @param from Cell the step starts on
+     * @param to Cell the step ends on, or -1
+     * @return The cell actually stepped on first
+     */
+    private int filled(int from, int to){
+        if(to != -1 && fillDiagonal){
+            int fill = Neighbors.fillIn(walls, from, to, fillDiagonalAlways);
+            if(fill != -1){
+                return fill;
+            }
+        }
+        return to;
+    }
+}
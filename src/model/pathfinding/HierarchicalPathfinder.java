@@ -0,0 +1,556 @@
+package model.pathfinding;
+
+import java.awt.Point;
+import java.util.LinkedList;
+
+/**
+ * Hierarchical pathfinding (HPA*) for boards too big to search cell by cell.
+ *
+ * The board is split into square clusters. Where two neighboring clusters
+ * touch, every run of open cells along their border gets one or two
+ * entrances, and the cost of walking between every pair of entrances inside
+ * a cluster is found once up front. A query then searches this small graph of
+ * entrances and only searches cell by cell inside the clusters the route
+ * passes through. Paths are close to, but not always exactly, the shortest.
+ *
+ * The pathfinder keeps a reference to the board it was built on. When a cell
+ * of that board is flipped between open and blocked, cellChanged rebuilds only
+ * the cluster holding it and the borders it sits on.
+ */
+public class HierarchicalPathfinder {
+    /** runs of open border at least this long get an entrance at each end */
+    private static final int LONG_ENTRANCE = 6;
+
+    private static final int LEFT = 0;
+    private static final int UP = 1;
+    private static final int RIGHT = 2;
+    private static final int DOWN = 3;
+
+    private boolean[][] walls;
+    private int rows;
+    private int cols;
+    private int clusterSize;
+    private int clustersAcross;
+    private Cluster[] clusters;
+
+    private boolean takeDiagonal;
+    private boolean fillDiagonal;
+    private boolean fillDiagonalAlways;
+
+    /** search inside one cluster, valid when seen[cell] == generation */
+    private double[] dist;
+    private int[] previous;
+    private int[] seen;
+    private int generation;
+    private OpenSet open;
+    private int[] neighbors = new int[8];
+
+    /** search over the entrances, valid when absSeen[cell] == absGeneration */
+    private double[] absDist;
+    private int[] absPrevious;
+    private int[] absSeen;
+    private int[] absClosed;
+    private int absGeneration;
+    private OpenSet absOpen;
+
+    /** cost from the start to each entrance of its cluster, and from each entrance of the end's cluster to the end */
+    private double[] startCost = new double[0];
+    private double[] endCost = new double[0];
+    private double directCost;
+    private int start;
+    private int end;
+
+    /** the refined path as cell ids */
+    private int[] route = new int[64];
+    private int routeLength;
+
+    /**
+     * A square part of the board and the entrances on its borders
+     */
+    private static class Cluster {
+        int top;
+        int left;
+        int bottom;
+        int right;
+        /** per side, entrance cells in this cluster and the cells they step to in the next one */
+        int[][] from = new int[4][0];
+        int[][] to = new int[4][0];
+        /** distinct entrance cells */
+        int[] entrances = new int[0];
+        /** cost between entrances i and j inside the cluster, at i*entrances.length + j */
+        double[] cost = new double[0];
+
+        boolean contains(int x, int y){
+            return x >= left && x < right && y >= top && y < bottom;
+        }
+    }
+
+    /**
+     * Splits a board into clusters and finds the entrances between them
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param clusterSize Width and height of a cluster in cells
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     */
+    public HierarchicalPathfinder(boolean[][] obstacles, int clusterSize, int diag) {
+        if(!Neighbors.isDiagLevel(diag)){
+            System.out.println("diag must be between 0..3");
+            diag = 0;
+        }
+        takeDiagonal = Neighbors.takesDiagonal(diag);
+        fillDiagonal = Neighbors.fillsDiagonal(diag);
+        fillDiagonalAlways = Neighbors.fillsDiagonalAlways(diag);
+
+        walls = obstacles;
+        rows = obstacles.length;
+        cols = obstacles[0].length;
+        this.clusterSize = Math.max(1, clusterSize);
+        clustersAcross = (cols + this.clusterSize - 1)/this.clusterSize;
+        int clustersDown = (rows + this.clusterSize - 1)/this.clusterSize;
+
+        int cells = rows*cols;
+        dist = new double[cells];
+        previous = new int[cells];
+        seen = new int[cells];
+        open = new OpenSet(cells);
+        absDist = new double[cells];
+        absPrevious = new int[cells];
+        absSeen = new int[cells];
+        absClosed = new int[cells];
+        absOpen = new OpenSet(cells);
+
+        clusters = new Cluster[clustersAcross*clustersDown];
+        for(int i=0;i<clusters.length;i++){
+            Cluster c = new Cluster();
+            c.left = (i%clustersAcross)*this.clusterSize;
+            c.top = (i/clustersAcross)*this.clusterSize;
+            c.right = Math.min(cols, c.left + this.clusterSize);
+            c.bottom = Math.min(rows, c.top + this.clusterSize);
+            clusters[i] = c;
+        }
+        for(int i=0;i<clusters.length;i++){
+            buildBorder(i, RIGHT);
+            buildBorder(i, DOWN);
+        }
+        for(int i=0;i<clusters.length;i++){
+            buildCosts(clusters[i]);
+        }
+    }
+
+    /**
+     * Repairs the pathfinder after one cell of the board it was built on has
+     * been flipped between open and blocked. Only the cluster holding the
+     * cell, and the neighbors it shares a changed border with, are rebuilt.
+     * @param row Row of the cell that changed
+     * @param col Column of the cell that changed
+     */
+    public void cellChanged(int row, int col){
+        int k = clusterIndex(col, row);
+        Cluster c = clusters[k];
+        int[] sides = {LEFT, UP, RIGHT, DOWN};
+        boolean[] onSide = {col == c.left, row == c.top, col == c.right-1, row == c.bottom-1};
+        for(int side : sides){
+            int j = neighborCluster(k, side);
+            if(onSide[side] && j != -1){
+                buildBorder(k, side);
+                buildCosts(clusters[j]);
+            }
+        }
+        buildCosts(c);
+    }
+
+    /**
+     * Finds a path with the cluster graph
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
+     *      or null if the end can't be reached
+     */
+    public LinkedList<Point> findPath(Point start, Point end){
+        this.start = start.y*cols + start.x;
+        this.end = end.y*cols + end.x;
+        if(this.start == this.end){
+            return new LinkedList<Point>();
+        }
+        if(walls[end.y][end.x]){
+            return null;
+        }
+
+        Cluster sc = clusters[clusterIndex(start.x, start.y)];
+        Cluster ec = clusters[clusterIndex(end.x, end.y)];
+        searchCluster(sc, this.start, -1);
+        startCost = costsTo(sc, startCost);
+        directCost = (sc == ec && seen[this.end] == generation) ? dist[this.end] : Double.MAX_VALUE;
+        searchCluster(ec, this.end, -1);
+        endCost = costsTo(ec, endCost);
+
+        if(!searchEntrances()){
+            return null;
+        }
+        refine();
+
+        LinkedList<Point> finalPath = new LinkedList<Point>();
+        int prev = this.start;
+        for(int i=0;i<routeLength;i++){
+            int u = route[i];
+            if(fillDiagonal){
+                int fill = Neighbors.fillIn(walls, prev, u, fillDiagonalAlways);
+                if(fill != -1){
+                    finalPath.add(new Point(fill%cols,fill/cols));
+                }
+            }
+            finalPath.add(new Point(u%cols,u/cols));
+            prev = u;
+        }
+        return finalPath;
+    }
+
+    /**
+     * A* over the entrances, from the start to the end
+     * @return Whether the end can be reached
+     */
+    private boolean searchEntrances(){
+        absGeneration = Neighbors.nextGeneration(absGeneration, absSeen, absClosed);
+        absOpen.clear();
+
+        absSeen[start] = absGeneration;
+        absDist[start] = 0;
+        absPrevious[start] = -1;
+        absOpen.add(start, octile(start, end));
+
+        while(!absOpen.isEmpty()){
+            int u = absOpen.poll();
+            if(u == end){
+                return true;
+            }
+            absClosed[u] = absGeneration;
+
+            Cluster c = clusters[clusterIndex(u%cols, u/cols)];
+            Cluster ec = clusters[clusterIndex(end%cols, end/cols)];
+            int idx = indexOf(c, u);
+            int n = c.entrances.length;
+            if(u == start){
+                for(int i=0;i<n;i++){
+                    relax(u, c.entrances[i], startCost[i]);
+                }
+                //the start may be blocked (a searcher standing on it), then it is
+                //no entrance and its steps into other clusters are only found here
+                int count = Neighbors.collect(walls, u, takeDiagonal, neighbors);
+                for(int i=0;i<count;i++){
+                    int p = neighbors[i];
+                    if(!c.contains(p%cols, p/cols)){
+                        relax(u, p, Neighbors.weight(cols, u, p));
+                    }
+                }
+            }else if(idx != -1){
+                for(int i=0;i<n;i++){
+                    relax(u, c.entrances[i], c.cost[idx*n + i]);
+                }
+            }else{
+                //a first step out of the start's cluster that is no entrance
+                searchCluster(c, u, -1);
+                for(int i=0;i<n;i++){
+                    int e = c.entrances[i];
+                    relax(u, e, seen[e] == generation ? dist[e] : Double.MAX_VALUE);
+                }
+                if(c == ec && seen[end] == generation){
+                    relax(u, end, dist[end]);
+                }
+            }
+            if(idx != -1){
+                for(int side=0;side<4;side++){
+                    int[] from = c.from[side];
+                    for(int i=0;i<from.length;i++){
+                        if(from[i] == u){
+                            relax(u, c.to[side][i], 1.0);
+                        }
+                    }
+                }
+            }
+            if(c == ec){
+                if(u == start){
+                    relax(u, end, directCost);
+                }else if(idx != -1){
+                    relax(u, end, endCost[idx]);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void relax(int u, int v, double cost){
+        if(cost == Double.MAX_VALUE || v == u) return;
+        double alt = absDist[u] + cost;
+        if(absSeen[v] != absGeneration){
+            absSeen[v] = absGeneration;
+            absDist[v] = alt;
+            absPrevious[v] = u;
+            absOpen.add(v, alt + octile(v, end));
+        }else if(alt < absDist[v] && absClosed[v] != absGeneration){
+            absDist[v] = alt;
+            absPrevious[v] = u;
+            if(absOpen.contains(v)){
+                absOpen.update(v, alt + octile(v, end));
+            }else{
+                absOpen.add(v, alt + octile(v, end));
+            }
+        }
+    }
+
+    /**
+     * Turns the route through the entrances into cells, searching only
+     * inside the clusters the route passes through
+     */
+    private void refine(){
+        //entrances from end back to start
+        int hops = 0;
+        for(int u = end; u != -1; u = absPrevious[u]){
+            hops++;
+        }
+        int[] abstractPath = new int[hops];
+        int i = hops;
+        for(int u = end; u != -1; u = absPrevious[u]){
+            abstractPath[--i] = u;
+        }
+
+        routeLength = 0;
+        for(i=1;i<hops;i++){
+            int a = abstractPath[i-1];
+            int b = abstractPath[i];
+            int ka = clusterIndex(a%cols, a/cols);
+            if(ka != clusterIndex(b%cols, b/cols)){
+                //crossing a border
+                addToRoute(b);
+                continue;
+            }
+            searchCluster(clusters[ka], a, b);
+            int first = routeLength;
+            for(int u = b; u != a; u = previous[u]){
+                addToRoute(u);
+            }
+            //the walk back was added backwards
+            for(int l=first, r=routeLength-1; l<r; l++, r--){
+                int t = route[l];
+                route[l] = route[r];
+                route[r] = t;
+            }
+        }
+    }
+
+    private void addToRoute(int cell){
+        if(routeLength == route.length){
+            int[] bigger = new int[route.length*2];
+            System.arraycopy(route, 0, bigger, 0, routeLength);
+            route = bigger;
+        }
+        route[routeLength++] = cell;
+    }
+
+    /**
+     * Dijkstra from a cell that never leaves one cluster
+     * @param c The cluster to stay in
+     * @param source The cell to search from, it may be blocked itself
+     * @param target Cell to stop at, or -1 to search the whole cluster
+     */
+    private void searchCluster(Cluster c, int source, int target){
+        generation = Neighbors.nextGeneration(generation, seen);
+        open.clear();
+
+        seen[source] = generation;
+        dist[source] = 0;
+        previous[source] = -1;
+        open.add(source, 0);
+        while(!open.isEmpty()){
+            int u = open.poll();
+            if(u == target) return;
+            int n = Neighbors.collect(walls, u, takeDiagonal, neighbors);
+            for(int i=0;i<n;i++){
+                int p = neighbors[i];
+                if(!c.contains(p%cols, p/cols)) continue;
+                double alt = dist[u] + Neighbors.weight(cols, u, p);
+                if(seen[p] != generation){
+                    seen[p] = generation;
+                    dist[p] = alt;
+                    previous[p] = u;
+                    open.add(p, alt);
+                }else if(alt < dist[p]){
+                    dist[p] = alt;
+                    previous[p] = u;
+                    if(open.contains(p)){
+                        open.update(p, alt);
+                    }else{
+                        open.add(p, alt);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the distance to every entrance of a cluster off the last search
+     * @param c The cluster searched
+     * @param costs Array to reuse if it is big enough
+     * @return The costs, Double.MAX_VALUE for entrances that were not reached
+     */
+    private double[] costsTo(Cluster c, double[] costs){
+        int n = c.entrances.length;
+        if(costs.length < n){
+            costs = new double[n];
+        }
+        for(int i=0;i<n;i++){
+            int e = c.entrances[i];
+            costs[i] = seen[e] == generation ? dist[e] : Double.MAX_VALUE;
+        }
+        return costs;
+    }
+
+    /**
+     * Collects a cluster's entrances and finds the cost between each pair
+     */
+    private void buildCosts(Cluster c){
+        int count = 0;
+        for(int side=0;side<4;side++){
+            count += c.from[side].length;
+        }
+        int[] entrances = new int[count];
+        int n = 0;
+        for(int side=0;side<4;side++){
+            for(int cell : c.from[side]){
+                boolean repeat = false;
+                for(int i=0;i<n;i++){
+                    if(entrances[i] == cell){
+                        repeat = true;
+                        break;
+                    }
+                }
+                if(!repeat){
+                    entrances[n++] = cell;
+                }
+            }
+        }
+        c.entrances = new int[n];
+        System.arraycopy(entrances, 0, c.entrances, 0, n);
+
+        c.cost = new double[n*n];
+        for(int i=0;i<n;i++){
+            searchCluster(c, c.entrances[i], -1);
+            for(int j=0;j<n;j++){
+                int e = c.entrances[j];
+                c.cost[i*n + j] = seen[e] == generation ? dist[e] : Double.MAX_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Finds the entrances on one side of a cluster, and the matching
+     * side of the cluster next to it
+     * @param k Index of the cluster
+     * @param side LEFT, UP, RIGHT or DOWN
+     */
+    private void buildBorder(int k, int side){
+        int j = neighborCluster(k, side);
+        if(j == -1) return;
+        if(side == LEFT || side == UP){
+            //always build from the top left cluster of the pair
+            buildBorder(j, side == LEFT ? RIGHT : DOWN);
+            return;
+        }
+        Cluster a = clusters[k];
+        Cluster b = clusters[j];
+        boolean across = side == RIGHT;
+        int length = across ? a.bottom - a.top : a.right - a.left;
+
+        int[] from = new int[length];
+        int[] to = new int[length];
+        int n = 0;
+        int runStart = -1;
+        for(int i=0;i<=length;i++){
+            boolean open = i < length && crossable(a, across, i);
+            if(open && runStart == -1){
+                runStart = i;
+            }else if(!open && runStart != -1){
+                int runLength = i - runStart;
+                if(runLength < LONG_ENTRANCE){
+                    n = addEntrance(a, across, runStart + runLength/2, from, to, n);
+                }else{
+                    n = addEntrance(a, across, runStart, from, to, n);
+                    n = addEntrance(a, across, i-1, from, to, n);
+                }
+                runStart = -1;
+            }
+        }
+
+        a.from[side] = new int[n];
+        a.to[side] = new int[n];
+        System.arraycopy(from, 0, a.from[side], 0, n);
+        System.arraycopy(to, 0, a.to[side], 0, n);
+        int opposite = across ? LEFT : UP;
+        b.from[opposite] = new int[n];
+        b.to[opposite] = new int[n];
+        System.arraycopy(to, 0, b.from[opposite], 0, n);
+        System.arraycopy(from, 0, b.to[opposite], 0, n);
+    }
+
+    /** Are both sides of the border open at this spot along it? */
+    private boolean crossable(Cluster a, boolean across, int i){
+        if(across){
+            int y = a.top + i;
+            return !walls[y][a.right-1] && !walls[y][a.right];
+        }
+        int x = a.left + i;
+        return !walls[a.bottom-1][x] && !walls[a.bottom][x];
+    }
+
+    private int addEntrance(Cluster a, boolean across, int i, int[] from, int[] to, int n){
+        if(across){
+            int y = a.top + i;
+            from[n] = y*cols + a.right-1;
+            to[n] = y*cols + a.right;
+        }else{
+            int x = a.left + i;
+            from[n] = (a.bottom-1)*cols + x;
+            to[n] = a.bottom*cols + x;
+        }
+        return n+1;
+    }
+
+    private int clusterIndex(int x, int y){
+        return (y/clusterSize)*clustersAcross + x/clusterSize;
+    }
+
+    /**
+     * @return Index of the cluster on a side of cluster k, or -1 at the edge of the board
+     */
+    private int neighborCluster(int k, int side){
+        int cx = k%clustersAcross;
+        int cy = k/clustersAcross;
+        if(side == LEFT) cx--;
+        if(side == UP) cy--;
+        if(side == RIGHT) cx++;
+        if(side == DOWN) cy++;
+        if(cx < 0 || cy < 0 || cx >= clustersAcross || cy*clustersAcross >= clusters.length){
+            return -1;
+        }
+        return cy*clustersAcross + cx;
+    }
+
+    private int indexOf(Cluster c, int cell){
+        for(int i=0;i<c.entrances.length;i++){
+            if(c.entrances[i] == cell) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Cost of the shortest walk between two cells on an open board
+     * @param c1 First cell
+     * @param c2 Second cell
+     * @return 1.41 per diagonal step plus 1.0 per straight step
+     */
+    private double octile(int c1, int c2){
+        int xdis = Math.abs(c2%cols - c1%cols);
+        int ydis = Math.abs(c2/cols - c1/cols);
+        if(!takeDiagonal) return xdis + ydis;
+        return 1.41*Math.min(xdis,ydis) + Math.abs(xdis - ydis);
+    }
+}
@@ -0,0 +1,461 @@
+package model.pathfinding;
+
+import java.awt.Point;
+import java.util.LinkedList;
+
+/**
+ * A path planner for one searcher chasing one goal over many turns (Moving
+ * Target D* Lite).
+ *
+ * The search runs forward from the searcher and keeps its results between
+ * queries. When the goal moves nothing found so far goes stale, only the
+ * estimates to the goal change, which the km offset on every key makes up
+ * for. When the searcher steps, the part of the search tree that hangs off
+ * its new cell is kept and the rest is thrown away. A flipped cell of the
+ * board repairs only what it touches. Each query searches only as far as
+ * the goal needs, so a chase costs about the same every turn however long
+ * it goes on.
+ *
+ * The planner keeps a reference to the board it plans on. Call cellChanged
+ * after flipping a cell of it, one cell at a time. The searcher's own cell
+ * may be blocked (it is standing on it).
+ *
+ * Distances are kept in hundredths (100 straight, 141 diagonal) so they add
+ * up exactly. The repairs compare keys for equality, which sums of 1.0 and
+ * 1.41 in doubles get wrong. The distances kept after the searcher steps
+ * still count from where the search began, which adds the same to all of
+ * them and changes no path.
+ */
+public class IncrementalPlanner {
+    private static final int STRAIGHT = Neighbors.STRAIGHT;
+    private static final int DIAGONAL = Neighbors.DIAGONAL;
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    private boolean[][] walls;
+    private int cols;
+    private boolean takeDiagonal;
+    private boolean fillDiagonal;
+    private boolean fillDiagonalAlways;
+
+    private int start = -1;
+    private int goal = -1;
+    /** goal the heuristic was measured to when keys were queued */
+    private int lastGoal;
+    /** how much every queued key is too big by since the goal moved */
+    private long km;
+
+    /** distance from the start, and the one step lookahead of it, valid when seen[cell] == generation */
+    private int[] g;
+    private int[] rhs;
+    private int[] seen;
+    private int generation;
+    private OpenSet open;
+    private int[] neighbors = new int[8];
+    private int[] succs = new int[8];
+    private int[] startSteps = new int[8];
+
+    /** cells kept when the start moves, when kept[cell] == step */
+    private int[] kept;
+    private int step;
+    /** the cells being forgotten, and the kept cells still to walk out from, when the start moves */
+    private int[] dropped;
+    private int[] chain;
+
+    /**
+     * Creates a planner on a board
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     */
+    public IncrementalPlanner(boolean[][] obstacles, int diag) {
+        if(!Neighbors.isDiagLevel(diag)){
+            System.out.println("diag must be between 0..3");
+            diag = 0;
+        }
+        takeDiagonal = Neighbors.takesDiagonal(diag);
+        fillDiagonal = Neighbors.fillsDiagonal(diag);
+        fillDiagonalAlways = Neighbors.fillsDiagonalAlways(diag);
+        reset(obstacles);
+    }
+
+    /**
+     * Forgets everything and plans on another board from now on
+     * @param obstacles A 2-D boolean array. true for wall.
+     */
+    public void reset(boolean[][] obstacles){
+        walls = obstacles;
+        cols = obstacles[0].length;
+        int cells = obstacles.length*cols;
+        if(g == null || g.length < cells){
+            g = new int[cells];
+            rhs = new int[cells];
+            seen = new int[cells];
+            open = new OpenSet(cells);
+            kept = new int[cells];
+            dropped = new int[cells];
+            chain = new int[cells];
+            generation = 0;
+            step = 0;
+        }
+        generation = Neighbors.nextGeneration(generation, seen);
+        open.clear();
+        start = -1;
+        goal = -1;
+        km = 0;
+    }
+
+    /**
+     * Tells the planner one cell of its board has been flipped between
+     * open and blocked
+     * @param row Row of the cell that changed
+     * @param col Column of the cell that changed
+     */
+    public void cellChanged(int row, int col){
+        if(start == -1) return;
+        int rows = walls.length;
+        //the cell, and every cell that can step onto it or squeeze past it
+        for(int y=Math.max(0,row-1);y<=Math.min(rows-1,row+1);y++){
+            for(int x=Math.max(0,col-1);x<=Math.min(cols-1,col+1);x++){
+                updateVertex(y*cols + x);
+            }
+        }
+    }
+
+    /**
+     * Finds a path, reusing as much of the last search as it can
+     * @param obstacles The board this planner was created on, a different board starts over
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
+     */
+    public LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end){
+        if(obstacles != walls){
+            reset(obstacles);
+        }
+        if(!plan(start.y*cols + start.x, end.y*cols + end.x)){
+            return null;
+        }
+        //the search runs from the start, so the path is read back from the goal
+        LinkedList<Point> finalPath = new LinkedList<Point>();
+        int u = goal;
+        //each step back is strictly closer to the start, the limit only guards a corrupt board
+        for(int steps=0; u != this.start && steps < g.length; steps++){
+            int prev = bestStep(u);
+            if(prev == -1) return null;
+            finalPath.addFirst(new Point(u%cols,u/cols));
+            if(fillDiagonal){
+                int fill = Neighbors.fillIn(walls, prev, u, fillDiagonalAlways);
+                if(fill != -1){
+                    finalPath.addFirst(new Point(fill%cols,fill/cols));
+                }
+            }
+            u = prev;
+        }
+        return finalPath;
+    }
+
+    /**
+     * The first step toward the goal
+     * @param row Row of the searcher
+     * @param col Column of the searcher
+     * @param goalRow Row of the goal
+     * @param goalCol Column of the goal
+     * @return Cell id (row*cols + col) of the next hop, or -1 if the goal
+     *      can't be reached or the searcher is on it
+     */
+    public int nextHop(int row, int col, int goalRow, int goalCol){
+        if(!plan(row*cols + col, goalRow*cols + goalCol) || start == goal){
+            return -1;
+        }
+        //read back from the goal to the cell just past the start
+        int next = goal;
+        for(int steps=0; steps < g.length; steps++){
+            int prev = bestStep(next);
+            if(prev == -1) return -1;
+            if(prev == start) break;
+            next = prev;
+        }
+        if(fillDiagonal){
+            int fill = Neighbors.fillIn(walls, start, next, fillDiagonalAlways);
+            if(fill != -1){
+                return fill;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Moves the start and goal and repairs the search
+     * @return Whether the goal can be reached from the start
+     */
+    private boolean plan(int newStart, int newGoal){
+        if(newGoal != goal){
+            goal = newGoal;
+            if(start != -1){
+                km += heuristic(lastGoal, goal);
+            }
+            lastGoal = goal;
+        }
+        if(newStart != start){
+            moveStart(newStart);
+        }
+        if(walls[goal/cols][goal%cols]){
+            return false;
+        }
+        computeShortestPath();
+        return g[goal] != INFINITE;
+    }
+
+    /**
+     * Starts the search over from a cell
+     */
+    private void restart(int newStart){
+        generation = Neighbors.nextGeneration(generation, seen);
+        open.clear();
+        km = 0;
+        lastGoal = goal;
+        start = newStart;
+        touch(start);
+        rhs[start] = 0;
+        queue(start);
+    }
+
+    /**
+     * Moves the start, keeping the cells whose route from the old start can
+     * go through the new one. Their distances are all too big by
+     * the same amount, the new start's old distance, so they still agree
+     * with each other. Every other cell is forgotten and worked out again
+     * from the ones kept.
+     */
+    private void moveStart(int newStart){
+        if(start == -1){
+            restart(newStart);
+            return;
+        }
+        touch(newStart);
+        if(g[newStart] == INFINITE){
+            //stepped off what was searched
+            restart(newStart);
+            return;
+        }
+        start = newStart;
+        //the new start may have been blocked since, it keeps the distance its tree was built from
+        rhs[start] = g[start];
+        open.remove(start);
+
+        step = Neighbors.nextGeneration(step, kept);
+        //walk out from the new start through every step a cell's lookahead distance came from
+        kept[start] = step;
+        int top = 0;
+        chain[top++] = start;
+        while(top > 0){
+            int p = chain[--top];
+            if(g[p] == INFINITE){
+                continue;
+            }
+            int n = Neighbors.collect(walls, p, takeDiagonal, succs);
+            for(int i=0;i<n;i++){
+                int u = succs[i];
+                if(seen[u] == generation && kept[u] != step && rhs[u] != INFINITE
+                        && rhs[u] == g[p] + weight(p, u)){
+                    kept[u] = step;
+                    chain[top++] = u;
+                }
+            }
+        }
+
+        int cells = walls.length*cols;
+        int droppedCount = 0;
+        for(int u=0;u<cells;u++){
+            //cells never reached need nothing forgotten
+            if(seen[u] == generation && kept[u] != step && (g[u] != INFINITE || rhs[u] != INFINITE)){
+                dropped[droppedCount++] = u;
+            }
+        }
+        for(int i=0;i<droppedCount;i++){
+            int u = dropped[i];
+            g[u] = INFINITE;
+            rhs[u] = INFINITE;
+            open.remove(u);
+        }
+        //the forgotten cells next to kept ones can be reached through them
+        for(int i=0;i<droppedCount;i++){
+            updateVertex(dropped[i]);
+        }
+        //and the new start is stepped from now even if it is blocked
+        updateSuccs(start);
+    }
+
+    /**
+     * Settles cells in key order until the goal's distance is known
+     */
+    private void computeShortestPath(){
+        touch(goal);
+        while(!open.isEmpty()){
+            double k1 = open.peekPriority();
+            double k2 = open.peekSecond();
+            boolean goalDone = rhs[goal] == g[goal];
+            if(goalDone && compareKey(k1, k2, goal) >= 0){
+                break;
+            }
+            int u = open.peek();
+            if(compareKey(k1, k2, u) < 0){
+                //queued before the goal moved
+                queue(u);
+            }else if(g[u] > rhs[u]){
+                g[u] = rhs[u];
+                open.remove(u);
+                updateSuccs(u);
+            }else{
+                g[u] = INFINITE;
+                updateVertex(u);
+                updateSuccs(u);
+            }
+        }
+    }
+
+    /**
+     * Updates every cell u can step onto
+     */
+    private void updateSuccs(int u){
+        int n = Neighbors.collect(walls, u, takeDiagonal, succs);
+        for(int i=0;i<n;i++){
+            updateVertex(succs[i]);
+        }
+    }
+
+    /**
+     * Recomputes a cell's lookahead distance and queues it if it
+     * disagrees with its distance. The start's stays what it was set to.
+     */
+    private void updateVertex(int u){
+        touch(u);
+        if(u != start){
+            int best = INFINITE;
+            int from = bestStep(u);
+            if(from != -1){
+                best = g[from] + weight(from, u);
+            }
+            rhs[u] = best;
+        }
+        if(g[u] != rhs[u]){
+            queue(u);
+        }else{
+            open.remove(u);
+        }
+    }
+
+    private void queue(int u){
+        int m = Math.min(g[u], rhs[u]);
+        if(open.contains(u)){
+            open.update(u, key(u), m);
+        }else{
+            open.add(u, key(u), m);
+        }
+    }
+
+    /**
+     * First part of a cell's key, its distance through the goal. The
+     * second part is min(g, rhs). Both are whole numbers, so they are
+     * exact as doubles in the open set.
+     */
+    private double key(int u){
+        int m = Math.min(g[u], rhs[u]);
+        if(m == INFINITE) return INFINITE;
+        return m + heuristic(u, goal) + km;
+    }
+
+    /**
+     * Compares a key from the open set to a cell's current key
+     * @return Negative, zero or positive as the key is smaller, equal or bigger
+     */
+    private int compareKey(double k1, double k2, int u){
+        double c1 = key(u);
+        if(k1 != c1) return k1 < c1 ? -1 : 1;
+        double c2 = Math.min(g[u], rhs[u]);
+        if(k2 != c2) return k2 < c2 ? -1 : 1;
+        return 0;
+    }
+
+    /**
+     * The cell a shortest route from the start reaches u through. Ties go
+     * to the first in neighbor order. The start can be stepped from even
+     * while it is blocked.
+     * @return The cell, or -1 if u is blocked or can't be reached
+     */
+    private int bestStep(int u){
+        if(walls[u/cols][u%cols]){
+            return -1;
+        }
+        int best = -1;
+        int bestDist = INFINITE;
+        int n = Neighbors.collect(walls, u, takeDiagonal, neighbors);
+        for(int i=0;i<n;i++){
+            int p = neighbors[i];
+            touch(p);
+            if(g[p] == INFINITE) continue;
+            int d = g[p] + weight(p, u);
+            if(d < bestDist){
+                best = p;
+                bestDist = d;
+            }
+        }
+        if(isStartStep(u)){
+            touch(start);
+            if(g[start] != INFINITE && g[start] + weight(start, u) < bestDist){
+                best = start;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Can the start, which collect leaves out when it is blocked, step onto u?
+     */
+    private boolean isStartStep(int u){
+        if(u == start || !walls[start/cols][start%cols]){
+            return false;
+        }
+        int dx = Math.abs(start%cols - u%cols);
+        int dy = Math.abs(start/cols - u/cols);
+        if(dx > 1 || dy > 1){
+            return false;
+        }
+        int n = Neighbors.collect(walls, start, takeDiagonal, startSteps);
+        for(int i=0;i<n;i++){
+            if(startSteps[i] == u){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resets a cell's search data the first time the planner looks at it
+     * @param cell The cell id
+     */
+    private void touch(int cell){
+        if(seen[cell] != generation){
+            seen[cell] = generation;
+            g[cell] = INFINITE;
+            rhs[cell] = INFINITE;
+        }
+    }
+
+    private int weight(int c1, int c2){
+        return Neighbors.hundredths(cols, c1, c2);
+    }
+
+    /**
+     * Cost of the shortest walk between two cells on an open board
+     * @param c1 First cell
+     * @param c2 Second cell
+     * @return Distance in hundredths
+     */
+    private int heuristic(int c1, int c2){
+        int xdis = Math.abs(c2%cols - c1%cols);
+        int ydis = Math.abs(c2/cols - c1/cols);
+        if(!takeDiagonal) return STRAIGHT*(xdis + ydis);
+        return DIAGONAL*Math.min(xdis,ydis) + STRAIGHT*Math.abs(xdis - ydis);
+    }
+}
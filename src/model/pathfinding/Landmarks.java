@@ -0,0 +1,164 @@
+package model.pathfinding;
+
+/**
+ * Distance tables from a few landmark cells, for the ALT heuristic (A*,
+ * Landmarks, Triangle inequality). If d is the distance from a landmark, no
+ * path from a to b can be shorter than |d(a) - d(b)|. In mazes this is a far
+ * better guess than a straight line, so A* heads the right way around walls.
+ *
+ * The tables are found once, over the static walls. Anything standing on the
+ * board later only makes paths longer, so the guess stays a safe underestimate
+ * on a board with more walls than the one the landmarks were found on.
+ *
+ * Landmarks are spread out by always picking the open cell farthest from the
+ * ones picked so far, which puts them on the edges and dead ends of the board.
+ */
+public class Landmarks {
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    private int rows;
+    private int cols;
+    private boolean diagonal;
+    /** landmark -> cell -> distance in hundredths, or INFINITE */
+    private int[][] dist;
+    private int[] cells;
+
+    /**
+     * Picks landmarks and finds the distance from each to every cell
+     * @param walls A 2-D boolean array. true for wall.
+     * @param count How many landmarks to pick
+     * @param diagonal Whether diagonal steps are allowed. Tables found with
+     *      diagonals are still safe for searches without them, not the other way.
+     */
+    public Landmarks(boolean[][] walls, int count, boolean diagonal) {
+        this.diagonal = diagonal;
+        rows = walls.length;
+        cols = rows > 0 ? walls[0].length : 0;
+        int size = rows*cols;
+        int[] neighbors = new int[8];
+        OpenSet open = new OpenSet(size);
+
+        //how far each cell is from the closest landmark picked so far
+        int[] nearest = new int[size];
+        int first = -1;
+        for(int i=0;i<size;i++){
+            nearest[i] = INFINITE;
+            if(first == -1 && !walls[i/cols][i%cols]){
+                first = i;
+            }
+        }
+
+        dist = new int[Math.max(0,count)][];
+        cells = new int[dist.length];
+        int picked = 0;
+        if(first != -1 && dist.length > 0){
+            //the first landmark is the cell farthest from any open cell
+            int[] seed = new int[size];
+            search(walls, first, seed, open, neighbors);
+            int next = farthest(seed);
+            while(picked < dist.length && next != -1){
+                cells[picked] = next;
+                dist[picked] = new int[size];
+                search(walls, next, dist[picked], open, neighbors);
+                for(int i=0;i<size;i++){
+                    nearest[i] = Math.min(nearest[i], dist[picked][i]);
+                }
+                picked++;
+                next = farthest(nearest);
+            }
+        }
+        if(picked < dist.length){
+            int[][] fewer = new int[picked][];
+            System.arraycopy(dist, 0, fewer, 0, picked);
+            dist = fewer;
+        }
+    }
+
+    /**
+     * A safe underestimate of the distance between two cells
+     * @param a First cell (row*cols + col)
+     * @param b Second cell
+     * @return The largest difference any landmark gives, 0 if none can tell
+     */
+    public double lowerBound(int a, int b){
+        int best = 0;
+        for(int i=0;i<dist.length;i++){
+            int da = dist[i][a];
+            int db = dist[i][b];
+            if(da == INFINITE || db == INFINITE) continue;
+            best = Math.max(best, Math.abs(da - db));
+        }
+        return best/(double)Neighbors.STRAIGHT;
+    }
+
+    /**
+     * Can these tables guide a search on this board?
+     * @param walls The board being searched
+     * @param diagonal Whether the search takes diagonal steps
+     */
+    public boolean fits(boolean[][] walls, boolean diagonal){
+        return walls.length == rows && walls[0].length == cols && (this.diagonal || !diagonal);
+    }
+
+    /**
+     * @return How many landmarks were picked, fewer than asked for on a board with few open cells
+     */
+    public int count(){
+        return dist.length;
+    }
+
+    /**
+     * @param i Which landmark
+     * @return Its cell (row*cols + col)
+     */
+    public int landmark(int i){
+        return cells[i];
+    }
+
+    /**
+     * The reachable cell with the largest finite distance
+     * @param distance Distance to each cell
+     * @return The cell, or -1 if every reachable cell has distance 0
+     */
+    private int farthest(int[] distance){
+        int best = -1;
+        int bestDist = 0;
+        for(int i=0;i<distance.length;i++){
+            if(distance[i] == INFINITE) continue;
+            if(distance[i] > bestDist){
+                best = i;
+                bestDist = distance[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Dijkstra from one cell to every cell
+     */
+    private void search(boolean[][] walls, int source, int[] out, OpenSet open, int[] neighbors){
+        for(int i=0;i<out.length;i++){
+            out[i] = INFINITE;
+        }
+        open.clear();
+        out[source] = 0;
+        open.add(source, 0);
+        while(!open.isEmpty()){
+            int u = open.poll();
+            int n = Neighbors.collect(walls, u, diagonal, neighbors);
+            for(int i=0;i<n;i++){
+                int p = neighbors[i];
+                int alt = out[u] + Neighbors.hundredths(cols, u, p);
+                if(alt < out[p]){
+                    if(out[p] == INFINITE){
+                        out[p] = alt;
+                        open.add(p, alt);
+                    }else{
+                        out[p] = alt;
+                        open.update(p, alt);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package model.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * The movement rules shared by the searches in this package. Cells are
+ * numbered row*cols + col.
+ *
+ * A diagonal step is only allowed if at least one of the two cells it
+ * squeezes between is open, so it never cuts through a super pinchy point.
+ */
+final class Neighbors {
+    /** cost of a straight and a diagonal step in hundredths, for the searches that add up whole numbers */
+    static final int STRAIGHT = 100;
+    static final int DIAGONAL = 141;
+
+    private Neighbors() {
+    }
+
+    /**
+     * Is this one of the levels of diagonal acceptance, 0,1,2,3?
+     * See Pathfinding for what they mean.
+     */
+    static boolean isDiagLevel(int diag){
+        return diag >= 0 && diag <= 3;
+    }
+
+    /**
+     * Does a level of diagonal acceptance let searches step diagonally?
+     */
+    static boolean takesDiagonal(int diag){
+        return diag != 0;
+    }
+
+    /**
+     * Does a level of diagonal acceptance fill in diagonals around corners?
+     */
+    static boolean fillsDiagonal(int diag){
+        return diag == 1 || diag == 2;
+    }
+
+    /**
+     * Does a level of diagonal acceptance fill in every diagonal, so the
+     * path only goes in cardinal directions?
+     */
+    static boolean fillsDiagonalAlways(int diag){
+        return diag == 1;
+    }
+
+    /**
+     * Starts a new generation for arrays that mark a cell as seen by
+     * holding the current generation. Clears them when the counter would
+     * wrap, so a stamp from long ago can never match.
+     * @param generation The current generation
+     * @param stamps The arrays stamped with it, null ones are skipped
+     * @return The next generation
+     */
+    static int nextGeneration(int generation, int[]... stamps){
+        if(generation == Integer.MAX_VALUE){
+            for(int[] stamp : stamps){
+                if(stamp != null){
+                    Arrays.fill(stamp, 0);
+                }
+            }
+            generation = 0;
+        }
+        return generation + 1;
+    }
+
+    /**
+     * Is a cell an open spot on board?
+     * I.E. Not off the board, and not a wall?
+     * @param walls The board, true for wall
+     * @param x X coordinate of point
+     * @param y Y coordinate of point
+     * @return
+     */
+    static boolean isOpen(boolean[][] walls, int x, int y){
+        if (x<0 || y < 0) return false;
+        if (y >= walls.length || x >= walls[y].length) return false;
+        return !walls[y][x];
+    }
+
+    /**
+     * Finds neighbors of a given cell. If diagonal is on,
+     * it can consider all 8 neighbors, otherwise just 4
+     * cardinal neighbors. The order is left, up, right, down,
+     * then the diagonals, which decides ties in every search.
+     * @param walls The board, true for wall
+     * @param cell Cell to find neighbors for
+     * @param diagonal Whether diagonal steps are allowed
+     * @param out Array of at least 8 to write the neighbors to
+     * @return How many neighbors were found
+     */
+    static int collect(boolean[][] walls, int cell, boolean diagonal, int[] out){
+        int cols = walls[0].length;
+        int x = cell%cols;
+        int y = cell/cols;
+        int n = 0;
+
+        boolean left = isOpen(walls,x-1,y);
+        boolean up = isOpen(walls,x,y-1);
+        boolean right = isOpen(walls,x+1,y);
+        boolean down = isOpen(walls,x,y+1);
+
+        if(left)
+            out[n++] = cell-1;
+        if(up)
+            out[n++] = cell-cols;
+        if(right)
+            out[n++] = cell+1;
+        if(down)
+            out[n++] = cell+cols;
+
+        if(diagonal){
+            if(left||up){
+                if (isOpen(walls,x-1,y-1))
+                    out[n++] = cell-cols-1;
+            }
+            if(right||up){
+                if (isOpen(walls,x+1,y-1))
+                    out[n++] = cell-cols+1;
+            }
+            if(left||down){
+                if (isOpen(walls,x-1,y+1))
+                    out[n++] = cell+cols-1;
+            }
+            if(right||down){
+                if (isOpen(walls,x+1,y+1))
+                    out[n++] = cell+cols+1;
+            }
+        }
+
+        return n;
+    }
+
+    /**
+     * Returns false if two cells are adjacent, returns
+     * true if two cells are diagonal.
+     * PRECONDITION: Cells have to be touching by edge or corner
+     * @param cols Number of columns on the board
+     * @param c1 First cell
+     * @param c2 Second cell
+     * @return Whether cells are diagonal
+     */
+    static boolean isDiagonal(int cols, int c1, int c2){
+        boolean sameX = c1%cols == c2%cols;
+        boolean sameY = c1/cols == c2/cols;
+        return !sameX && !sameY;
+    }
+
+    /**
+     * Cost of stepping between two touching cells
+     * @param cols Number of columns on the board
+     * @param c1 First cell
+     * @param c2 Second cell
+     * @return 1.41 for a diagonal step, 1.0 otherwise
+     */
+    static double weight(int cols, int c1, int c2){
+        return isDiagonal(cols,c1,c2) ? 1.41 : 1.0;
+    }
+
+    /**
+     * weight in hundredths, so sums of steps come out exact
+     * @return DIAGONAL for a diagonal step, STRAIGHT otherwise
+     */
+    static int hundredths(int cols, int c1, int c2){
+        return isDiagonal(cols,c1,c2) ? DIAGONAL : STRAIGHT;
+    }
+
+    /**
+     * The cell to step on first when walking diagonally from one cell
+     * to another, if that diagonal should be filled in.
+     * @param walls The board, true for wall
+     * @param from Cell the step starts on
+     * @param to Cell the step ends on
+     * @param always Fill in every diagonal, not just those around corners
+     * @return The cardinal cell to insert, or -1 if none is needed
+     */
+    static int fillIn(boolean[][] walls, int from, int to, boolean always){
+        int cols = walls[0].length;
+        int fx = from%cols;
+        int fy = from/cols;
+        int tx = to%cols;
+        int ty = to/cols;
+        if(fx == tx || fy == ty){
+            return -1;
+        }
+        if(always || !(isOpen(walls,tx,fy) && isOpen(walls,fx,ty))){
+            if(isOpen(walls,tx,fy)){
+                return fy*cols + tx;
+            }else{
+                return ty*cols + fx;
+            }
+        }
+        return -1;
+    }
+}
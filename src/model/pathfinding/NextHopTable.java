@@ -0,0 +1,131 @@
+package model.pathfinding;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The first step from every open cell to every other open cell of a board,
+ * worked out once so a move is a table lookup instead of a search. Only the
+ * static walls are in it, anything standing on the board later is not.
+ *
+ * Every goal gets its own distance field (see DistanceField), and the hop
+ * from each cell is read off it, diagonal fill-in included. The goals are
+ * independent, so they are split over a pool of threads.
+ *
+ * A hop is stored as one byte, the direction of the step, so a board with
+ * n open cells takes n*n bytes. Meant for small boards.
+ */
+public class NextHopTable {
+    /** a table row is split until each piece has at most this many goals */
+    private static final int SPLIT = 16;
+    private static final byte NONE = -1;
+
+    private boolean[][] walls;
+    private int cols;
+    private int diag;
+    /** cell -> its index among the open cells, or -1 for a wall */
+    private int[] index;
+    /** open cell indexes in cell order */
+    private int[] cells;
+    /** (goal index * open cells + from index) -> direction of the hop, (dy+1)*3 + (dx+1) */
+    private byte[] hops;
+
+    /**
+     * Builds the table
+     * @param walls The static walls, true for wall
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @param pool The threads to build it on
+     */
+    public NextHopTable(boolean[][] walls, int diag, ForkJoinPool pool) {
+        this.walls = walls;
+        this.diag = diag;
+        int rows = walls.length;
+        cols = rows > 0 ? walls[0].length : 0;
+        index = new int[rows*cols];
+        int open = 0;
+        for(int i=0;i<index.length;i++){
+            index[i] = walls[i/cols][i%cols] ? -1 : open++;
+        }
+        cells = new int[open];
+        for(int i=0;i<index.length;i++){
+            if(index[i] != -1) cells[index[i]] = i;
+        }
+        hops = new byte[open*open];
+        pool.invoke(new Build(0, open));
+    }
+
+    /**
+     * Counts the cells a table for this board would cover, to decide
+     * whether it is worth building before building it
+     * @param walls The static walls, true for wall
+     * @return Number of open cells
+     */
+    public static int openCells(boolean[][] walls){
+        int open = 0;
+        for(boolean[] row : walls){
+            for(boolean wall : row){
+                if(!wall) open++;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * The first step from a cell toward a goal over the static walls
+     * @param row Row of the cell to step from
+     * @param col Column of the cell to step from
+     * @param goalRow Row of the goal
+     * @param goalCol Column of the goal
+     * @return Cell id (row*cols + col) of the next hop, or -1 if either cell
+     *      is a wall, the goal can't be reached, or the cell is the goal
+     */
+    public int nextHop(int row, int col, int goalRow, int goalCol){
+        int from = index[row*cols + col];
+        int goal = index[goalRow*cols + goalCol];
+        if(from == -1 || goal == -1) return -1;
+        byte dir = hops[goal*cells.length + from];
+        if(dir == NONE) return -1;
+        return (row + dir/3 - 1)*cols + col + dir%3 - 1;
+    }
+
+    /**
+     * Fills in the table rows of a range of goals
+     */
+    private class Build extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int from;
+        private int to;
+
+        Build(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from > SPLIT){
+                int mid = (from + to) >>> 1;
+                invokeAll(new Build(from, mid), new Build(mid, to));
+                return;
+            }
+            //each piece searches with its own field
+            DistanceField field = new DistanceField();
+            int open = cells.length;
+            for(int g=from;g<to;g++){
+                int goal = cells[g];
+                field.compute(walls, goal/cols, goal%cols, diag);
+                for(int f=0;f<open;f++){
+                    int cell = cells[f];
+                    int hop = field.nextHop(cell/cols, cell%cols);
+                    byte dir = NONE;
+                    if(hop != -1){
+                        dir = (byte)((hop/cols - cell/cols + 1)*3 + (hop%cols - cell%cols + 1));
+                    }
+                    hops[g*open + f] = dir;
+                }
+            }
+        }
+    }
+}
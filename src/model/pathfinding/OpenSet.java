@@ -0,0 +1,288 @@
+package model.pathfinding;
+
+/**
+ * The frontier of a search. This is an indexed binary min-heap over int cell ids
+ * (row*cols + col) so polling the smallest cell and changing a cell's priority
+ * are both O(log n) instead of a scan over the whole frontier.
+ *
+ * It hands out cells in exactly the order the old LinkedList frontier did:
+ * the smallest priority wins and ties go to whichever cell was queued first.
+ * A cell that is added again while it is still queued keeps its place in
+ * line (the list always found its earliest copy first), and the later copy
+ * is served after the first one is polled.
+ */
+public class OpenSet {
+    /** heap slot -> cell */
+    private int[] heap;
+    /** cell -> heap slot, or -1 if the cell is not queued */
+    private int[] pos;
+    /** cell -> current priority */
+    private double[] key;
+    /** cell -> second priority, compared when priorities are equal */
+    private double[] tie;
+    /** cell -> insertion stamp of its earliest queued copy */
+    private int[] order;
+    private int size;
+    private int stamp;
+
+    /** later copies of a cell that was added while it was already queued */
+    private int[] copyHead;
+    private int[] copyTail;
+    private int[] copyStamp;
+    private int[] copyNext;
+    private int copyCount;
+
+    /**
+     * Creates an open set for cells numbered 0..cells-1
+     * @param cells Number of cells on the board (rows*cols)
+     */
+    public OpenSet(int cells) {
+        heap = new int[cells];
+        pos = new int[cells];
+        key = new double[cells];
+        tie = new double[cells];
+        order = new int[cells];
+        copyHead = new int[cells];
+        copyTail = new int[cells];
+        copyStamp = new int[Math.max(16, cells/4)];
+        copyNext = new int[copyStamp.length];
+        for(int i=0;i<cells;i++){
+            pos[i] = -1;
+            copyHead[i] = -1;
+        }
+    }
+
+    /**
+     * Number of cells this open set can hold
+     * @return The capacity given to the constructor
+     */
+    public int capacity(){
+        return pos.length;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Is this cell waiting in the open set?
+     * @param cell The cell id
+     * @return Whether it is queued
+     */
+    public boolean contains(int cell){
+        return pos[cell] != -1;
+    }
+
+    /**
+     * Queues a cell with a given priority. If the cell is already queued
+     * it keeps its place among equal priorities, its priority is changed,
+     * and one more copy of it will be served later.
+     * @param cell The cell id
+     * @param priority Its priority, smaller is served first
+     */
+    public void add(int cell, double priority){
+        add(cell, priority, 0);
+    }
+
+    /**
+     * Queues a cell with a priority and a second priority that decides
+     * between equal priorities before the order cells were queued in.
+     * See add(int, double).
+     * @param cell The cell id
+     * @param priority Its priority, smaller is served first
+     * @param second Its second priority, smaller is served first
+     */
+    public void add(int cell, double priority, double second){
+        if(pos[cell] == -1){
+            key[cell] = priority;
+            tie[cell] = second;
+            order[cell] = stamp++;
+            pos[cell] = size;
+            heap[size] = cell;
+            size++;
+            siftUp(pos[cell]);
+        }else{
+            addCopy(cell, stamp++);
+            update(cell, priority, second);
+        }
+    }
+
+    /**
+     * Changes the priority of a queued cell. Does nothing if the
+     * cell is not queued.
+     * @param cell The cell id
+     * @param priority The new priority
+     */
+    public void update(int cell, double priority){
+        update(cell, priority, 0);
+    }
+
+    /**
+     * Changes both priorities of a queued cell. Does nothing if the
+     * cell is not queued.
+     * @param cell The cell id
+     * @param priority The new priority
+     * @param second The new second priority
+     */
+    public void update(int cell, double priority, double second){
+        int i = pos[cell];
+        if(i == -1) return;
+        double old = key[cell];
+        double oldTie = tie[cell];
+        key[cell] = priority;
+        tie[cell] = second;
+        if(priority < old || (priority == old && second < oldTie)){
+            siftUp(i);
+        }else if (priority > old || second > oldTie){
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Takes a cell out of the open set, along with any later copies of it.
+     * Does nothing if the cell is not queued.
+     * @param cell The cell id
+     */
+    public void remove(int cell){
+        int i = pos[cell];
+        if(i == -1) return;
+        copyHead[cell] = -1;
+        size--;
+        pos[cell] = -1;
+        if(i < size){
+            int moved = heap[size];
+            heap[i] = moved;
+            pos[moved] = i;
+            siftDown(i);
+            if(pos[moved] == i){
+                siftUp(i);
+            }
+        }
+    }
+
+    /**
+     * The cell that poll would return, without removing it.
+     * PRECONDITION: open set is not empty
+     * @return The cell id
+     */
+    public int peek(){
+        return heap[0];
+    }
+
+    /**
+     * Priority of the cell that poll would return
+     * PRECONDITION: open set is not empty
+     */
+    public double peekPriority(){
+        return key[heap[0]];
+    }
+
+    /**
+     * Second priority of the cell that poll would return
+     * PRECONDITION: open set is not empty
+     */
+    public double peekSecond(){
+        return tie[heap[0]];
+    }
+
+    /**
+     * Removes and returns the cell with smallest priority.
+     * PRECONDITION: open set is not empty
+     * @return The cell id
+     */
+    public int poll(){
+        int top = heap[0];
+        size--;
+        if(size > 0){
+            heap[0] = heap[size];
+            pos[heap[0]] = 0;
+            siftDown(0);
+        }
+        pos[top] = -1;
+
+        //serve the next copy of this cell in its own turn
+        int c = copyHead[top];
+        if(c != -1){
+            copyHead[top] = copyNext[c];
+            order[top] = copyStamp[c];
+            pos[top] = size;
+            heap[size] = top;
+            size++;
+            siftUp(pos[top]);
+        }
+        return top;
+    }
+
+    /**
+     * Empties the open set so it can be used for another search
+     */
+    public void clear(){
+        for(int i=0;i<size;i++){
+            pos[heap[i]] = -1;
+            copyHead[heap[i]] = -1;
+        }
+        size = 0;
+        stamp = 0;
+        copyCount = 0;
+    }
+
+    private void addCopy(int cell, int s){
+        if(copyCount == copyStamp.length){
+            int[] newStamp = new int[copyCount*2];
+            int[] newNext = new int[copyCount*2];
+            System.arraycopy(copyStamp, 0, newStamp, 0, copyCount);
+            System.arraycopy(copyNext, 0, newNext, 0, copyCount);
+            copyStamp = newStamp;
+            copyNext = newNext;
+        }
+        int c = copyCount++;
+        copyStamp[c] = s;
+        copyNext[c] = -1;
+        if(copyHead[cell] == -1){
+            copyHead[cell] = c;
+        }else{
+            copyNext[copyTail[cell]] = c;
+        }
+        copyTail[cell] = c;
+    }
+
+    private boolean less(int a, int b){
+        if(key[a] != key[b]) return key[a] < key[b];
+        if(tie[a] != tie[b]) return tie[a] < tie[b];
+        return order[a] < order[b];
+    }
+
+    private void siftUp(int i){
+        int cell = heap[i];
+        while(i > 0){
+            int parent = (i-1)/2;
+            if(!less(cell, heap[parent])) break;
+            heap[i] = heap[parent];
+            pos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = cell;
+        pos[cell] = i;
+    }
+
+    private void siftDown(int i){
+        int cell = heap[i];
+        while(true){
+            int child = 2*i+1;
+            if(child >= size) break;
+            if(child+1 < size && less(heap[child+1], heap[child])){
+                child++;
+            }
+            if(!less(heap[child], cell)) break;
+            heap[i] = heap[child];
+            pos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = cell;
+        pos[cell] = i;
+    }
+}
@@ -0,0 +1,236 @@
+package model.pathfinding;
+
+import java.awt.Point;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Remembers recent paths so asking for the same path on an unchanged board
+ * does not search again. Paths are looked up by start, end, search and
+ * diagonal level, for one board at one version. The caller bumps the version
+ * whenever the board changes (ObstacleOverlay keeps one), and every path
+ * found on an older version is dropped.
+ *
+ * Holds at most a fixed number of paths, the least recently used path is
+ * dropped to make room. The hit and miss counts are there to size it.
+ *
+ * A cache is not thread safe.
+ */
+public class PathCache {
+    private int capacity;
+    private LinkedHashMap<Long, LinkedList<Point>> paths;
+    private PathfindingContext context = new PathfindingContext();
+
+    /** board and version the cached paths were found on */
+    private boolean[][] board;
+    private int version;
+
+    private int hits;
+    private int misses;
+
+    /** stands in for "no path", since the map can't tell a stored null from a missing one */
+    private static final LinkedList<Point> NO_PATH = new LinkedList<Point>();
+
+    /**
+     * Creates an empty cache
+     * @param capacity Most paths to keep
+     */
+    public PathCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        //access order, so the eldest entry is the least recently used
+        paths = new LinkedHashMap<Long, LinkedList<Point>>(16, 0.75f, true){
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, LinkedList<Point>> eldest){
+                return size() > PathCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Finds a path, or returns the one found last time if the board has not
+     * changed since
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param version Version of obstacles, changes whenever a cell of it does
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param algorithm Which search to run
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
+     *      The list and its points are the caller's to keep.
+     */
+    public LinkedList<Point> findPath(boolean[][] obstacles, int version, Point start, Point end, Algorithm algorithm, int diag){
+        int cols = obstacles[0].length;
+        LinkedList<Point> path = lookup(obstacles, version, start.y*cols + start.x, end.y*cols + end.x, algorithm, diag);
+        return path == null || path == NO_PATH ? null : copy(path);
+    }
+
+    /**
+     * The first step of the path findPath would return. Nothing is copied,
+     * so a hit allocates nothing.
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param version Version of obstacles, changes whenever a cell of it does
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param algorithm Which search to run
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return Cell id (row*cols + col) of the first step, or -1 if there is
+     *      no path or start is already end
+     */
+    public int nextHop(boolean[][] obstacles, int version, Point start, Point end, Algorithm algorithm, int diag){
+        int cols = obstacles[0].length;
+        return nextHop(obstacles, version, start.y*cols + start.x, end.y*cols + end.x, algorithm, diag);
+    }
+
+    /**
+     * nextHop with the cells given as ids, so no Points are made on a hit
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param version Version of obstacles, changes whenever a cell of it does
+     * @param start Cell id (row*cols + col) to start from
+     * @param end Cell id (row*cols + col) to go to
+     * @param algorithm Which search to run
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return Cell id of the first step, or -1 if there is no path or start
+     *      is already end
+     */
+    public int nextHop(boolean[][] obstacles, int version, int start, int end, Algorithm algorithm, int diag){
+        LinkedList<Point> path = lookup(obstacles, version, start, end, algorithm, diag);
+        if(path == null || path.isEmpty()){
+            return -1;
+        }
+        Point first = path.getFirst();
+        return first.y*obstacles[0].length + first.x;
+    }
+
+    /**
+     * Is the path already here? Doesn't count as a hit or a miss. Lets a
+     * caller search somewhere else, e.g. on another thread, only when it
+     * isn't, and hand the path over with put.
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param version Version of obstacles, changes whenever a cell of it does
+     * @param start Cell id (row*cols + col) to start from
+     * @param end Cell id (row*cols + col) to go to
+     * @param algorithm Which search
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     * @return true if nextHop would answer without searching
+     */
+    public boolean contains(boolean[][] obstacles, int version, int start, int end, Algorithm algorithm, int diag){
+        sync(obstacles, version);
+        return paths.containsKey(key(start, end, algorithm, diag));
+    }
+
+    /**
+     * Keeps a path that was searched for somewhere else. Counts as a miss.
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param version Version of obstacles the path was found on
+     * @param start Cell id (row*cols + col) the path starts from
+     * @param end Cell id (row*cols + col) the path goes to
+     * @param algorithm Which search found it
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     * @param path What the search returned, null for no path. The cache keeps
+     *      it, so don't change it afterwards.
+     */
+    public void put(boolean[][] obstacles, int version, int start, int end, Algorithm algorithm, int diag, LinkedList<Point> path){
+        if(!Neighbors.isDiagLevel(diag)){
+            return;
+        }
+        sync(obstacles, version);
+        misses++;
+        paths.put(key(start, end, algorithm, diag), path == null ? NO_PATH : path);
+    }
+
+    /**
+     * Drops every path if the board or its version isn't the one they were found on
+     */
+    private void sync(boolean[][] obstacles, int version){
+        if(obstacles != board || version != this.version){
+            paths.clear();
+            board = obstacles;
+            this.version = version;
+        }
+    }
+
+    private static long key(int start, int end, Algorithm algorithm, int diag){
+        //start and end get 28 bits each, the search 6 and diag 2
+        return ((long)start << 36) | ((long)end << 8)
+                | (algorithm.ordinal() << 2) | (diag & 3);
+    }
+
+    /**
+     * @return The cached path, NO_PATH, or null if diag was bad
+     */
+    private LinkedList<Point> lookup(boolean[][] obstacles, int version, int start, int end, Algorithm algorithm, int diag){
+        sync(obstacles, version);
+
+        int cols = obstacles[0].length;
+        long key = key(start, end, algorithm, diag);
+        LinkedList<Point> path = paths.get(key);
+        if(path != null){
+            hits++;
+        }else{
+            misses++;
+            path = context.findPath(obstacles, new Point(start%cols, start/cols),
+                    new Point(end%cols, end/cols), algorithm, diag);
+            if(!Neighbors.isDiagLevel(diag)){
+                //not cached, context already complained
+                return path;
+            }
+            if(path == null){
+                path = NO_PATH;
+            }
+            paths.put(key, path);
+        }
+        return path;
+    }
+
+    private LinkedList<Point> copy(LinkedList<Point> path){
+        LinkedList<Point> result = new LinkedList<Point>();
+        for(Point p : path){
+            result.add(new Point(p));
+        }
+        return result;
+    }
+
+    /**
+     * @return Number of lookups answered from the cache
+     */
+    public int getHits(){
+        return hits;
+    }
+
+    /**
+     * @return Number of lookups that had to search
+     */
+    public int getMisses(){
+        return misses;
+    }
+
+    public void resetCounters(){
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * @return Number of paths held right now
+     */
+    public int size(){
+        return paths.size();
+    }
+
+    public int capacity(){
+        return capacity;
+    }
+
+    /**
+     * Drops every path
+     */
+    public void clear(){
+        paths.clear();
+        board = null;
+    }
+}
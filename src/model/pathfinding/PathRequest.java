@@ -0,0 +1,30 @@
+package model.pathfinding;
+
+import java.awt.Point;
+
+/**
+ * One query in a batch of paths, see Pathfinding.findPaths
+ */
+public class PathRequest {
+    /** A starting point (x,y) i.e. (column,row) */
+    public final Point start;
+    /** An ending point (x,y) i.e. (column,row) */
+    public final Point end;
+    public final Algorithm algorithm;
+    /** An integer 0,1,2,3 representing level of diagonal acceptance */
+    public final int diag;
+
+    /**
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param algorithm Which search to run
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     */
+    public PathRequest(Point start, Point end, Algorithm algorithm, int diag) {
+        this.start = start;
+        this.end = end;
+        this.algorithm = algorithm;
+        this.diag = diag;
+    }
+}
@@ -0,0 +1,904 @@
+package model.pathfinding;
+
+import java.awt.Point;
+import java.util.LinkedList;
+
+/**
+ * Everything one search needs, kept between searches. The scratch buffers are
+ * sized to the board once and are reset by bumping a generation counter instead
+ * of being reallocated, so repeated queries on the same board allocate nothing
+ * but the returned path.
+ *
+ * A context is not thread safe, but separate contexts share nothing, so each
+ * thread can search with its own. See Pathfinding for what the diagonal levels
+ * mean, the static methods there are wrappers around a context per thread.
+ */
+public class PathfindingContext {
+    private int rows;
+    private int cols;
+    private boolean[][] walls;
+    private int start;
+    private int end;
+
+    /**This lets it consider taking a diagonal at a slightly higher cost
+     * It will not cut through a diagonal spot if it is a super pinchy point
+     */
+    private boolean takeDiagonal;
+    /**
+     * This will have it fill in the diagonal spots when walking around corners as to not cut corners
+     */
+    private boolean fillDiagonal;
+    /**
+     * This will have it fill in the diagonal spots so that the entire path is only cardinal directions
+     */
+    private boolean fillDiagonalAlways;
+
+    /** distance from start, valid when seen[cell] == generation */
+    private double[] dist;
+    /** distance from start to cell, plus estimated distance from cell to end */
+    private double[] fscore;
+    /** previous cell on the path, valid when seen[cell] == generation */
+    private int[] previous;
+    private int[] seen;
+    /** cell has been expanded when closed[cell] == generation */
+    private int[] closed;
+    private int generation;
+    private OpenSet open;
+    /** cells taken off the open set by the last search */
+    private int nodesExpanded;
+
+    /** scratch space for Neighbors.collect */
+    private int[] neighbors = new int[8];
+    /** scratch space for the jump points found from one cell */
+    private int[] jumps = new int[8];
+
+    /** the search back from the end, only allocated once a bidirectional search is run */
+    private double[] backDist;
+    /** next cell on the path toward the end */
+    private int[] backNext;
+    private int[] backSeen;
+    private int[] backClosed;
+    private OpenSet backOpen;
+
+    /** the board packed into bits, only allocated once a breadth first search is run */
+    private BitWavefront wavefront;
+    /** distance from start in hundredths for weighted searches, only allocated once one is run */
+    private int[] weightedDist;
+    private BucketQueue buckets;
+
+    /** the last search ran on the packed board, its path is in wavefront and not in previous */
+    private boolean packedSearch;
+
+    /**
+     * Creates a context that will size itself on the first search
+     */
+    public PathfindingContext() {
+        this(0,0);
+    }
+
+    /**
+     * Creates a context with buffers for a board of a given size
+     * @param rows Number of rows on the board
+     * @param cols Number of columns on the board
+     */
+    public PathfindingContext(int rows, int cols) {
+        allocate(rows*cols);
+    }
+
+    /**
+     * Default path-finding method with all options available.
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param useHeuristic Heuristic makes it more efficient but less accurate
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
+     */
+    public LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end, boolean useHeuristic, int diag){
+        return findPath(obstacles, start, end, useHeuristic ? Algorithm.ASTAR : Algorithm.DIJKSTRA, diag);
+    }
+
+    /**
+     * Path-finding with a choice of search.
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param algorithm Which search to run
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
+     */
+    public LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end, Algorithm algorithm, int diag){
+        int cols = obstacles[0].length;
+        if(!search(obstacles, start.y*cols + start.x, end.y*cols + end.x, algorithm, diag)){
+            return null;
+        }
+        if(packedSearch){
+            return wavefrontPath();
+        }
+        return reconstructPath();
+    }
+
+    /**
+     * The first step of the path findPath would return, without building
+     * the path. Diagonal fill-in is applied, so with diag 1 or 2 the hop
+     * may be the cell squeezed past rather than the diagonal one.
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param algorithm Which search to run
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return Cell id (row*cols + col) of the first step, or -1 if there is
+     *      no path or start is already end
+     */
+    public int nextHop(boolean[][] obstacles, Point start, Point end, Algorithm algorithm, int diag){
+        int cols = obstacles[0].length;
+        return nextHop(obstacles, start.y*cols + start.x, end.y*cols + end.x, algorithm, diag);
+    }
+
+    /**
+     * nextHop with the cells given as ids, so no Points are made
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param start Cell id (row*cols + col) to start from
+     * @param end Cell id (row*cols + col) to go to
+     * @param algorithm Which search to run
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return Cell id of the first step, or -1 if there is no path or start
+     *      is already end
+     */
+    public int nextHop(boolean[][] obstacles, int start, int end, Algorithm algorithm, int diag){
+        if(!search(obstacles, start, end, algorithm, diag)){
+            return -1;
+        }
+        if(packedSearch){
+            return wavefront.step(this.start);
+        }
+        return firstStep();
+    }
+
+    /**
+     * Runs one of the searches, leaving the result in previous, or in
+     * the wavefront if packedSearch is set
+     * @return Whether a path was found
+     */
+    private boolean search(boolean[][] obstacles, int start, int end, Algorithm algorithm, int diag){
+        if(!setDiagonal(diag)){
+            System.out.println("diag must be between 0..3");
+            return false;
+        }
+        prepare(obstacles);
+        this.start = start;
+        this.end = end;
+        nodesExpanded = 0;
+        packedSearch = false;
+
+        if(algorithm == Algorithm.BREADTH_FIRST){
+            if(!takeDiagonal){
+                packedSearch = true;
+                return breadthFirst();
+            }
+            return dijkstra();
+        }else if(algorithm == Algorithm.DIJKSTRA){
+            return dijkstra();
+        }else if(algorithm == Algorithm.JUMP_POINT && takeDiagonal){
+            return jumpPoint();
+        }else if(algorithm == Algorithm.BIDIRECTIONAL){
+            return bidirectional();
+        }else{
+            return astar();
+        }
+    }
+
+    /**
+     * Shortest path with A*, guided by landmark distances (ALT) as well as
+     * the straight line distance, whichever guesses higher. Expands far fewer
+     * cells than plain A* in mazes.
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param landmarks Distance tables found on this board, or on the same
+     *      board with fewer walls. Ignored if they don't fit it.
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
+     */
+    public LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end, Landmarks landmarks, int diag){
+        if(!setDiagonal(diag)){
+            System.out.println("diag must be between 0..3");
+            return null;
+        }
+        prepare(obstacles);
+        this.start = start.y*cols + start.x;
+        this.end = end.y*cols + end.x;
+        nodesExpanded = 0;
+
+        if(landmarks != null && !landmarks.fits(obstacles, takeDiagonal)){
+            landmarks = null;
+        }
+        if(!alt(landmarks)){
+            return null;
+        }
+        return reconstructPath();
+    }
+
+    /**
+     * Shortest path where stepping onto some cells costs more than others,
+     * e.g. enemies that would rather walk on grass than dirt. Costs are whole
+     * hundredths, so the search queues cells in buckets instead of a heap.
+     * @param obstacles A 2-D boolean array. true for wall.
+     * @param start A starting point (x,y) i.e. (column,row)
+     * @param end An ending point (x,y) i.e. (column,row)
+     * @param terrain Cost of every cell of this board. If it doesn't fit
+     *      the board every cell costs the same.
+     * @param diag An integer 0,1,2,3 representing level of diagonal acceptance.
+     *      See Pathfinding for more details
+     * @return A linked list representing path from beginning to end. (path includes endpoint)
+     */
+    public LinkedList<Point> findPath(boolean[][] obstacles, Point start, Point end, Terrain terrain, int diag){
+        if(!setDiagonal(diag)){
+            System.out.println("diag must be between 0..3");
+            return null;
+        }
+        prepare(obstacles);
+        this.start = start.y*cols + start.x;
+        this.end = end.y*cols + end.x;
+        nodesExpanded = 0;
+
+        boolean found;
+        if(terrain != null && terrain.fits(obstacles)){
+            found = dial(terrain);
+        }else{
+            found = dijkstra();
+        }
+        if(!found){
+            return null;
+        }
+        return reconstructPath();
+    }
+
+    /**
+     * How much work the last search did
+     * @return Number of cells taken off the open set and expanded
+     */
+    public int getNodesExpanded(){
+        return nodesExpanded;
+    }
+
+    private boolean setDiagonal(int diag){
+        if(!Neighbors.isDiagLevel(diag)){
+            return false;
+        }
+        takeDiagonal = Neighbors.takesDiagonal(diag);
+        fillDiagonal = Neighbors.fillsDiagonal(diag);
+        fillDiagonalAlways = Neighbors.fillsDiagonalAlways(diag);
+        return true;
+    }
+
+    /**
+     * Points the context at a board and starts a new generation so
+     * nothing from the last search is seen. Only allocates if the
+     * board has more cells than any board before it.
+     */
+    private void prepare(boolean[][] obstacles){
+        walls = obstacles;
+        rows = obstacles.length;
+        cols = obstacles[0].length;
+        if(rows*cols > seen.length){
+            allocate(rows*cols);
+        }
+
+        generation = Neighbors.nextGeneration(generation, seen, closed, backSeen, backClosed);
+        open.clear();
+    }
+
+    private void allocate(int cells){
+        dist = new double[cells];
+        fscore = new double[cells];
+        previous = new int[cells];
+        seen = new int[cells];
+        closed = new int[cells];
+        generation = 0;
+        open = new OpenSet(cells);
+    }
+
+    /**
+     * Dijkstra's algorithm.
+     * @return Whether the guaranteed shortest path from start to end was found.
+     */
+    private boolean dijkstra() {
+        //Prepare start point
+        touch(start);
+        dist[start] = 0;
+        open.add(start, 0);
+
+        while(!open.isEmpty()){
+            //Find closest point
+            int smallest = open.poll(); //u
+            nodesExpanded++;
+            double smallestDist = dist[smallest];
+
+            //End search if found end point
+            if (smallest == end){
+                return true;
+            }
+
+            closed[smallest] = generation;
+
+            //Process neighbors
+            int n = Neighbors.collect(walls, smallest, takeDiagonal, neighbors);
+            for(int i=0;i<n;i++){
+                int p = neighbors[i];
+                double weight = Neighbors.weight(cols, p, smallest);
+                double alt = smallestDist + weight;
+                touch(p);
+                if (alt < dist[p]){
+                    dist[p] = alt;
+                    previous[p] = smallest;
+                    if(closed[p] != generation){
+                        open.add(p, alt);
+                    }else{
+                        open.update(p, alt);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Dijkstra's algorithm over terrain costs, with a bucket queue (Dial's
+     * algorithm). Every step costs between 1 and terrain.maxStep() hundredths.
+     * @return Whether the cheapest path from start to end was found.
+     */
+    private boolean dial(Terrain terrain) {
+        if(weightedDist == null || weightedDist.length < seen.length){
+            weightedDist = new int[seen.length];
+            buckets = new BucketQueue(seen.length);
+        }
+        buckets.clear(terrain.maxStep());
+
+        touch(start);
+        weightedDist[start] = 0;
+        buckets.add(start, 0);
+
+        while(!buckets.isEmpty()){
+            int smallest = buckets.poll();
+            nodesExpanded++;
+            if (smallest == end){
+                return true;
+            }
+            closed[smallest] = generation;
+
+            int n = Neighbors.collect(walls, smallest, takeDiagonal, neighbors);
+            for(int i=0;i<n;i++){
+                int p = neighbors[i];
+                if(closed[p] == generation) continue;
+                int alt = weightedDist[smallest] + terrain.cost(p, Neighbors.isDiagonal(cols, smallest, p));
+                if(seen[p] != generation){
+                    touch(p);
+                    weightedDist[p] = alt;
+                    previous[p] = smallest;
+                    buckets.add(p, alt);
+                }else if(alt < weightedDist[p]){
+                    weightedDist[p] = alt;
+                    previous[p] = smallest;
+                    buckets.update(p, alt);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A* Pathfinding algorithm. Uses Euclidean distance as heuristic.
+     * @return Whether a path from start to end was found. Not guaranteed to be exact shortest.
+     */
+    private boolean astar() {
+        //prepare first point
+        touch(start);
+        dist[start] = 0;
+        open.add(start, fscore[start]);
+
+        while(!open.isEmpty()){
+            //find smallest f-score, not distance
+            int smallest = open.poll(); //u
+            nodesExpanded++;
+
+            //End search if found end point
+            if (smallest == end){
+                return true;
+            }
+
+            closed[smallest] = generation;
+
+            //Process neighbors
+            int n = Neighbors.collect(walls, smallest, takeDiagonal, neighbors);
+            for(int i=0;i<n;i++){
+                int p = neighbors[i];
+                double weight = Neighbors.weight(cols, p, smallest);
+                double alt = dist[smallest] + weight;
+                double altF = alt + eDistance(smallest,end);
+                touch(p);
+                if (alt < dist[p]){
+                    dist[p] = alt;
+                    fscore[p] = altF;
+                    previous[p] = smallest;
+                    if(closed[p] != generation){
+                        open.add(p, altF);
+                    }else{
+                        open.update(p, altF);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A* with a consistent heuristic, the larger of the octile distance
+     * and what the landmarks say.
+     * @param landmarks Distance tables, or null for octile distance alone
+     * @return Whether the guaranteed shortest path from start to end was found.
+     */
+    private boolean alt(Landmarks landmarks) {
+        touch(start);
+        dist[start] = 0;
+        open.add(start, lowerBound(start, landmarks));
+
+        while(!open.isEmpty()){
+            int smallest = open.poll();
+            nodesExpanded++;
+
+            if (smallest == end){
+                return true;
+            }
+
+            closed[smallest] = generation;
+
+            int n = Neighbors.collect(walls, smallest, takeDiagonal, neighbors);
+            for(int i=0;i<n;i++){
+                int p = neighbors[i];
+                touch(p);
+                if(closed[p] == generation) continue;
+                double alt = dist[smallest] + Neighbors.weight(cols, p, smallest);
+                if (alt < dist[p]){
+                    if(fscore[p] == Double.MAX_VALUE){
+                        //heuristic only needs working out once per cell
+                        fscore[p] = lowerBound(p, landmarks);
+                    }
+                    dist[p] = alt;
+                    previous[p] = smallest;
+                    if(open.contains(p)){
+                        open.update(p, alt + fscore[p]);
+                    }else{
+                        open.add(p, alt + fscore[p]);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Bidirectional A*. One search goes forward from the start and one backward
+     * from the end, each guided by half the difference of the distances to
+     * both ends (so the two guesses agree and neither search overtakes the
+     * other). Whichever side has the smaller frontier goes next. They stop
+     * once no route through their frontiers can beat the best meeting found.
+     * @return Whether the guaranteed shortest path from start to end was found.
+     */
+    private boolean bidirectional() {
+        if(start == end){
+            return true;
+        }
+        if(walls[end/cols][end%cols]){
+            return false;
+        }
+        if(backDist == null || backDist.length < dist.length){
+            backDist = new double[dist.length];
+            backNext = new int[dist.length];
+            backSeen = new int[dist.length];
+            backClosed = new int[dist.length];
+            backOpen = new OpenSet(dist.length);
+        }
+        backOpen.clear();
+
+        touch(start);
+        dist[start] = 0;
+        open.add(start, potential(start));
+        backSeen[end] = generation;
+        backDist[end] = 0;
+        backNext[end] = -1;
+        backOpen.add(end, -potential(end));
+
+        double best = Double.MAX_VALUE;
+        //the best meeting is the step from meetFrom (forward side) to meetTo (backward side)
+        int meetFrom = -1;
+        int meetTo = -1;
+
+        while(!open.isEmpty() && !backOpen.isEmpty()){
+            if(open.peekPriority() + backOpen.peekPriority() >= best){
+                break;
+            }
+            if(open.size() <= backOpen.size()){
+                int u = open.poll();
+                nodesExpanded++;
+                closed[u] = generation;
+                int n = Neighbors.collect(walls, u, takeDiagonal, neighbors);
+                for(int i=0;i<n;i++){
+                    int p = neighbors[i];
+                    double alt = dist[u] + Neighbors.weight(cols, u, p);
+                    touch(p);
+                    if(alt < dist[p] && closed[p] != generation){
+                        dist[p] = alt;
+                        previous[p] = u;
+                        if(open.contains(p)){
+                            open.update(p, alt + potential(p));
+                        }else{
+                            open.add(p, alt + potential(p));
+                        }
+                    }
+                    if(backSeen[p] == generation && alt + backDist[p] < best){
+                        best = alt + backDist[p];
+                        meetFrom = u;
+                        meetTo = p;
+                    }
+                }
+            }else{
+                int u = backOpen.poll();
+                nodesExpanded++;
+                backClosed[u] = generation;
+                int n = Neighbors.collect(walls, u, takeDiagonal, neighbors);
+                for(int i=0;i<n;i++){
+                    int p = neighbors[i];
+                    double alt = backDist[u] + Neighbors.weight(cols, u, p);
+                    if(backSeen[p] != generation){
+                        backSeen[p] = generation;
+                        backDist[p] = Double.MAX_VALUE;
+                    }
+                    if(alt < backDist[p] && backClosed[p] != generation){
+                        backDist[p] = alt;
+                        backNext[p] = u;
+                        if(backOpen.contains(p)){
+                            backOpen.update(p, alt - potential(p));
+                        }else{
+                            backOpen.add(p, alt - potential(p));
+                        }
+                    }
+                    if(seen[p] == generation && dist[p] != Double.MAX_VALUE && dist[p] + alt < best){
+                        best = dist[p] + alt;
+                        meetFrom = p;
+                        meetTo = u;
+                    }
+                }
+            }
+        }
+        if(meetFrom == -1){
+            return false;
+        }
+
+        //chain the backward half on to the forward half for reconstructPath
+        previous[meetTo] = meetFrom;
+        for(int v = meetTo; backNext[v] != -1; v = backNext[v]){
+            previous[backNext[v]] = v;
+        }
+        return true;
+    }
+
+    /**
+     * Breadth first search on the board packed into bits, see BitWavefront.
+     * Only for boards without diagonal steps, where every step costs 1.
+     * @return Whether a path from start to end was found
+     */
+    private boolean breadthFirst(){
+        if(wavefront == null){
+            wavefront = new BitWavefront();
+        }
+        wavefront.load(walls);
+        boolean found = wavefront.search(start, end);
+        nodesExpanded = wavefront.cellsVisited();
+        return found;
+    }
+
+    /**
+     * Half of how much closer a cell is to the end than to the start, by
+     * straight line. Forward keys add it and backward keys take it away.
+     */
+    private double potential(int cell){
+        double toEnd;
+        double toStart;
+        if(takeDiagonal){
+            toEnd = octile(cell,end);
+            toStart = octile(cell,start);
+        }else{
+            toEnd = Math.abs(end%cols - cell%cols) + Math.abs(end/cols - cell/cols);
+            toStart = Math.abs(start%cols - cell%cols) + Math.abs(start/cols - cell/cols);
+        }
+        return (toEnd - toStart)/2;
+    }
+
+    /**
+     * Estimate of the distance from a cell to the end, never too high
+     */
+    private double lowerBound(int cell, Landmarks landmarks){
+        double h = takeDiagonal ? octile(cell,end) : Math.abs(end%cols - cell%cols) + Math.abs(end/cols - cell/cols);
+        if(landmarks != null){
+            h = Math.max(h, landmarks.lowerBound(cell, end));
+        }
+        return h;
+    }
+
+    /**
+     * Jump Point Search. Works like A* with an exact octile heuristic, but
+     * instead of queueing every neighbor it jumps in straight lines and
+     * diagonals and only queues the cells where a shortest path could have
+     * to turn (jump points). Cells in between are filled in when the path
+     * is reconstructed. Uses the same rule as Neighbors for squeezing
+     * diagonally past a wall.
+     * PRECONDITION: takeDiagonal is on
+     * @return Whether the guaranteed shortest path from start to end was found.
+     */
+    private boolean jumpPoint() {
+        touch(start);
+        dist[start] = 0;
+        open.add(start, octile(start,end));
+
+        while(!open.isEmpty()){
+            int smallest = open.poll();
+            nodesExpanded++;
+
+            if (smallest == end){
+                return true;
+            }
+
+            closed[smallest] = generation;
+
+            int n = findJumps(smallest);
+            for(int i=0;i<n;i++){
+                int p = jumps[i];
+                touch(p);
+                if(closed[p] == generation) continue;
+                double alt = dist[smallest] + octile(smallest,p);
+                if (alt < dist[p]){
+                    dist[p] = alt;
+                    previous[p] = smallest;
+                    if(open.contains(p)){
+                        open.update(p, alt + octile(p,end));
+                    }else{
+                        open.add(p, alt + octile(p,end));
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the jump points reachable from a cell. Only the directions a
+     * shortest path arriving from the previous jump point could continue
+     * in are followed (the natural and forced neighbors).
+     * @param cell Cell being expanded
+     * @return How many jump points were written to jumps
+     */
+    private int findJumps(int cell){
+        int x = cell%cols;
+        int y = cell/cols;
+        int n = 0;
+        int prev = previous[cell];
+
+        if(prev == -1){
+            //the start, every direction
+            int count = Neighbors.collect(walls, cell, true, neighbors);
+            for(int i=0;i<count;i++){
+                int p = neighbors[i];
+                n = addJump(n, jump(p%cols, p/cols, p%cols - x, p/cols - y));
+            }
+            return n;
+        }
+
+        int dx = Integer.signum(x - prev%cols);
+        int dy = Integer.signum(y - prev/cols);
+        if(dx != 0 && dy != 0){
+            boolean side = isOpen(x+dx, y);
+            boolean ahead = isOpen(x, y+dy);
+            if(ahead)
+                n = addJump(n, jump(x, y+dy, 0, dy));
+            if(side)
+                n = addJump(n, jump(x+dx, y, dx, 0));
+            if(ahead || side)
+                n = addJump(n, jump(x+dx, y+dy, dx, dy));
+            if(!isOpen(x-dx, y) && ahead)
+                n = addJump(n, jump(x-dx, y+dy, -dx, dy));
+            if(!isOpen(x, y-dy) && side)
+                n = addJump(n, jump(x+dx, y-dy, dx, -dy));
+        }else if(dx == 0){
+            if(isOpen(x, y+dy)){
+                n = addJump(n, jump(x, y+dy, 0, dy));
+                if(!isOpen(x+1, y))
+                    n = addJump(n, jump(x+1, y+dy, 1, dy));
+                if(!isOpen(x-1, y))
+                    n = addJump(n, jump(x-1, y+dy, -1, dy));
+            }
+        }else{
+            if(isOpen(x+dx, y)){
+                n = addJump(n, jump(x+dx, y, dx, 0));
+                if(!isOpen(x, y+1))
+                    n = addJump(n, jump(x+dx, y+1, dx, 1));
+                if(!isOpen(x, y-1))
+                    n = addJump(n, jump(x+dx, y-1, dx, -1));
+            }
+        }
+        return n;
+    }
+
+    private int addJump(int n, int cell){
+        if(cell != -1){
+            jumps[n++] = cell;
+        }
+        return n;
+    }
+
+    /**
+     * Walks from a cell in one direction until it finds a jump point:
+     * the end, a cell with a forced neighbor, or (going diagonally) a
+     * cell that a straight jump can get a jump point from.
+     * @param x X coordinate of the first cell of the walk
+     * @param y Y coordinate of the first cell of the walk
+     * @param dx Step in x, -1, 0 or 1
+     * @param dy Step in y, -1, 0 or 1
+     * @return The jump point, or -1 if the walk hits a wall first
+     */
+    private int jump(int x, int y, int dx, int dy){
+        while(true){
+            if(!isOpen(x, y)) return -1;
+            int cell = y*cols + x;
+            if(cell == end) return cell;
+
+            if(dx != 0 && dy != 0){
+                if((isOpen(x-dx, y+dy) && !isOpen(x-dx, y)) ||
+                        (isOpen(x+dx, y-dy) && !isOpen(x, y-dy))){
+                    return cell;
+                }
+                if(jump(x+dx, y, dx, 0) != -1 || jump(x, y+dy, 0, dy) != -1){
+                    return cell;
+                }
+                //can't squeeze between two walls
+                if(!isOpen(x+dx, y) && !isOpen(x, y+dy)){
+                    return -1;
+                }
+            }else if(dx != 0){
+                if((isOpen(x+dx, y+1) && !isOpen(x, y+1)) ||
+                        (isOpen(x+dx, y-1) && !isOpen(x, y-1))){
+                    return cell;
+                }
+            }else{
+                if((isOpen(x+1, y+dy) && !isOpen(x+1, y)) ||
+                        (isOpen(x-1, y+dy) && !isOpen(x-1, y))){
+                    return cell;
+                }
+            }
+            x += dx;
+            y += dy;
+        }
+    }
+
+    private boolean isOpen(int x, int y){
+        return Neighbors.isOpen(walls, x, y);
+    }
+
+    /**
+     * Resets a cell's search data the first time this search looks at it
+     * @param cell The cell id
+     */
+    private void touch(int cell){
+        if(seen[cell] != generation){
+            seen[cell] = generation;
+            dist[cell] = Double.MAX_VALUE;
+            fscore[cell] = Double.MAX_VALUE;
+            previous[cell] = -1;
+        }
+    }
+
+    /**
+     * Reconstructs the path from the beginning to end
+     * @return The path, not including start and including end
+     */
+    private LinkedList<Point> reconstructPath(){
+        LinkedList<Point> finalPath = new LinkedList<Point>();
+        int u = end;
+        while (previous[u] != -1){
+            int prev = stepBack(u, previous[u]);
+            finalPath.add(0,new Point(u%cols,u/cols));
+            if(fillDiagonal) {
+                int fill = Neighbors.fillIn(walls, prev, u, fillDiagonalAlways);
+                if(fill != -1){
+                    finalPath.add(0,new Point(fill%cols,fill/cols));
+                }
+            }
+            if(prev != previous[u]){
+                //still between two jump points
+                previous[prev] = previous[u];
+            }
+            u = prev;
+        }
+        return finalPath;
+    }
+
+    /**
+     * Walks the path from the end the way reconstructPath does, without
+     * building it
+     * @return The first cell reconstructPath would give, -1 if the path is empty
+     */
+    private int firstStep(){
+        int first = -1;
+        int u = end;
+        while (previous[u] != -1){
+            int prev = stepBack(u, previous[u]);
+            first = u;
+            if(fillDiagonal) {
+                int fill = Neighbors.fillIn(walls, prev, u, fillDiagonalAlways);
+                if(fill != -1){
+                    first = fill;
+                }
+            }
+            if(prev != previous[u]){
+                //still between two jump points
+                previous[prev] = previous[u];
+            }
+            u = prev;
+        }
+        return first;
+    }
+
+    /**
+     * Reads the path off a breadth first search
+     * @return The path, not including start and including end
+     */
+    private LinkedList<Point> wavefrontPath(){
+        LinkedList<Point> finalPath = new LinkedList<Point>();
+        int u = wavefront.step(start);
+        while(u != -1){
+            finalPath.add(new Point(u%cols,u/cols));
+            u = wavefront.step(u);
+        }
+        return finalPath;
+    }
+
+    /**
+     * One step from a cell toward its previous cell. They are the same
+     * unless the previous cell is a jump point further along a line.
+     */
+    private int stepBack(int cell, int prev){
+        int dx = Integer.signum(prev%cols - cell%cols);
+        int dy = Integer.signum(prev/cols - cell/cols);
+        return cell + dy*cols + dx;
+    }
+
+    /**
+     * Euclidean distance between two cells
+     * @param c1 First cell
+     * @param c2 Second cell
+     * @return Double value of Euclidean distance
+     */
+    private double eDistance (int c1, int c2){
+        int xdis = c2%cols - c1%cols;
+        int ydis = c2/cols - c1/cols;
+        return Math.sqrt(xdis*xdis + ydis*ydis);
+    }
+
+    /**
+     * Cost of the shortest walk between two cells on an open board,
+     * diagonal steps first and then straight ones
+     * @param c1 First cell
+     * @param c2 Second cell
+     * @return 1.41 per diagonal step plus 1.0 per straight step
+     */
+    private double octile(int c1, int c2){
+        int xdis = Math.abs(c2%cols - c1%cols);
+        int ydis = Math.abs(c2/cols - c1/cols);
+        return 1.41*Math.min(xdis,ydis) + Math.abs(xdis - ydis);
+    }
+}
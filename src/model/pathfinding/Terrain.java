@@ -0,0 +1,69 @@
+package model.pathfinding;
+
+/**
+ * How much it costs to step onto each cell of a board, in hundredths of a
+ * plain step. Costs are whole numbers so a weighted search can add them up
+ * exactly and queue cells in buckets (see BucketQueue) instead of a heap.
+ *
+ * A diagonal step onto a cell costs 1.41 times a straight one, rounded to
+ * the nearest hundredth.
+ */
+public class Terrain {
+    private int rows;
+    private int cols;
+    /** cell -> cost of a straight and a diagonal step onto it */
+    private int[] straight;
+    private int[] diagonal;
+    private int maxStep;
+
+    /**
+     * Looks up the cost of every cell from its tile
+     * @param tiles Tile number of each cell, e.g. the background layer
+     * @param costs Cost in hundredths for each tile number. Tiles past the
+     *      end of the table, and costs below 1, cost a plain step (100).
+     */
+    public Terrain(int[][] tiles, int[] costs) {
+        rows = tiles.length;
+        cols = rows > 0 ? tiles[0].length : 0;
+        straight = new int[rows*cols];
+        diagonal = new int[rows*cols];
+        for(int r=0;r<rows;r++){
+            for(int c=0;c<cols;c++){
+                int tile = tiles[r][c];
+                int cost = Neighbors.STRAIGHT;
+                if(tile >= 0 && tile < costs.length && costs[tile] > 0){
+                    cost = costs[tile];
+                }
+                int cell = r*cols + c;
+                straight[cell] = cost;
+                diagonal[cell] = (cost*Neighbors.DIAGONAL + Neighbors.STRAIGHT/2)/Neighbors.STRAIGHT;
+                maxStep = Math.max(maxStep, diagonal[cell]);
+            }
+        }
+    }
+
+    /**
+     * Cost of stepping onto a cell
+     * @param cell The cell stepped onto (row*cols + col)
+     * @param diagonalStep Whether the step is diagonal
+     * @return Cost in hundredths
+     */
+    public int cost(int cell, boolean diagonalStep){
+        return diagonalStep ? diagonal[cell] : straight[cell];
+    }
+
+    /**
+     * @return The most any single step costs
+     */
+    public int maxStep(){
+        return maxStep;
+    }
+
+    /**
+     * Do these costs cover this board?
+     * @param walls The board being searched
+     */
+    public boolean fits(boolean[][] walls){
+        return walls.length == rows && walls[0].length == cols;
+    }
+}
@@ -12,7 +12,14 @@ import java.util.LinkedList;
 import model.Constants;
 import model.Model;
 import model.MovieClip;
+import model.Pathfinding;
 import model.Tile;
+import model.pathfinding.Components;
+import model.pathfinding.HierarchicalPathfinder;
+import model.pathfinding.Landmarks;
+import model.pathfinding.NextHopTable;
+import model.pathfinding.Terrain;
+import model.utils.Cells;
 import model.utils.DPoint;
 
 public class GameTiles {
@@ -29,6 +36,24 @@ public class GameTiles {
     public MovieClip[][] background;
     public MovieClip[][] foreground;
     public boolean[][] walls;
+    /** background tile number of each cell, 0 for nothing */
+    public int[][] backgroundTiles;
+    /** cost of stepping onto each cell, from its background tile, see getTerrain */
+    private Terrain terrain;
+    /** walls with the enemies standing on them, kept up to date as they move */
+    public ObstacleOverlay obstacles;
+    /** where the ducking animations are, the enemies are looked up in model.enemies */
+    public Occupancy occupancy;
+    /** enemies by their number in model.enemies, bucketed so the ones near the player are quick to find */
+    public SpatialHash enemyHash;
+    /** connected regions of obstacles, tells at once when the player can't be reached */
+    public Components components;
+    /** clusters and entrances of obstacles, for paths across big boards, null unless enemies use it */
+    private HierarchicalPathfinder hierarchy;
+    /** distances from a few landmarks over walls, for the ALT heuristic, null unless enemies use them */
+    private Landmarks landmarks;
+    /** every hop between open cells over walls, null unless enemies use it and the level is small */
+    public NextHopTable nextHops;
     
     Model model;
 
@@ -89,16 +114,19 @@ public class GameTiles {
      */
     public void setBackground(String path){
         System.out.println("reading background: "+path);
+        ArrayList<ArrayList<Integer>> tiles = new ArrayList<ArrayList<Integer>>();
         LinkedList<String> cells = parseFile(path);
         int currRow = 0;
         int currCol = 0;
         for (String textRow : cells){
             String[] textCells = textRow.split(" ");
             currCol = 0;
+            tiles.add(new ArrayList<Integer>());
             for(String textCell : textCells){
                 if(!textCell.equals("")){
+                    int cell = 0;
                     try{
-                        int cell = Integer.parseInt(textCell);
+                        cell = Integer.parseInt(textCell);
                         
                         if(cell > 0){
                             String im = numToBGTile(cell);
@@ -115,6 +143,7 @@ public class GameTiles {
                     }catch(NumberFormatException e){
                         System.err.println("Parsing background: "+textCell+" is not a number.");
                     }
+                    tiles.get(currRow).add(cell);
                     currCol ++;
                 }
             }
@@ -123,6 +152,15 @@ public class GameTiles {
         
         rows = currRow;
         cols = currCol;
+        
+        backgroundTiles = new int[rows][cols];
+        for(int r=0;r<rows;r++){
+            ArrayList<Integer> row = tiles.get(r);
+            for(int c=0;c<cols && c<row.size();c++){
+                backgroundTiles[r][c] = row.get(c);
+            }
+        }
+        terrain = null;
     }
     
     /**
@@ -158,16 +196,8 @@ public class GameTiles {
                             isFence.get(currRow).add(false);
                             walls[currRow][currCol] = false;
                             if(cell == 2){
-                                Tile enemy = new Tile("images/Chupacabra",true);
-                                enemy.swapAndResume("ChupaIdleFront");
-                                enemy.dir = Tile.Direction.DOWN;
-                                Point position = tileToXY(currCol,currRow);
-                                enemy.x = position.x;
-                                enemy.y = position.y;
-                                enemy.row = currRow;
-                                enemy.col = currCol;
-                                model.addChild(enemy, 2);
-                                model.enemies.add(enemy);
+                                //drawn once it comes on screen, see FrameHandler.bindEnemySprites
+                                model.enemies.add(currRow, currCol, Tile.Direction.DOWN);
                             }else if(cell == 3){
                                 model.player = new Tile("images/player",true);
                                 model.player.swapAndResume("HershelFrontIdle");
@@ -286,6 +316,28 @@ public class GameTiles {
             }
         }
         sortDepth(2);
+        
+        obstacles = new ObstacleOverlay(walls);
+        occupancy = new Occupancy(rows, cols);
+        model.enemies.setBoard(rows, cols);
+        enemyHash = new SpatialHash(rows, cols, Constants.ENEMY_BUCKET_SIZE, model.enemies.count);
+        for(int i=0;i<model.enemies.count;i++){
+            obstacles.occupy(model.enemies.row[i], model.enemies.col[i]);
+            enemyHash.put(i, model.enemies.row[i], model.enemies.col[i]);
+        }
+        components = new Components(obstacles.board());
+        landmarks = null;
+        if(Constants.ENEMY_PATHING == 6){
+            landmarks = new Landmarks(walls, Constants.LANDMARK_COUNT, true);
+        }
+        nextHops = null;
+        if(Constants.ENEMY_PATHING == 4 && NextHopTable.openCells(walls) <= Constants.NEXT_HOP_TABLE_CELLS){
+            nextHops = new NextHopTable(walls, 1, Pathfinding.getPool());
+        }
+        hierarchy = null;
+        if(Constants.ENEMY_PATHING == 5){
+            hierarchy = new HierarchicalPathfinder(obstacles.board(), Constants.PATH_CLUSTER_SIZE, 1);
+        }
     }
     
     
@@ -298,9 +350,68 @@ public class GameTiles {
         }
     }
     
+    /**
+     * The hierarchical pathfinder over obstacles, built when the level loaded
+     * @return The pathfinder, kept up to date by obstacleChanged, null
+     *      unless enemies use it
+     */
+    public HierarchicalPathfinder getHierarchy(){
+        return hierarchy;
+    }
+    
+    /**
+     * Landmark distances over walls, found when the level loaded. Enemies
+     * don't change them, a board with more walls only makes the real
+     * distances longer.
+     * @return The landmarks, null unless enemies use them
+     */
+    public Landmarks getLandmarks(){
+        return landmarks;
+    }
+    
+    /**
+     * The cost of stepping onto each cell, worked out from the background
+     * the first time it is asked for since the level loaded
+     * @return The costs
+     */
+    public Terrain getTerrain(){
+        if(terrain == null){
+            terrain = new Terrain(backgroundTiles, Constants.TERRAIN_COSTS);
+        }
+        return terrain;
+    }
+    
+    /**
+     * Tells everything built over obstacles that a cell of it flipped
+     * between open and blocked
+     * @param row Row of the cell
+     * @param col Column of the cell
+     */
+    public void obstacleChanged(int row, int col){
+        components.cellChanged(row, col);
+        if(hierarchy != null){
+            hierarchy.cellChanged(row, col);
+        }
+    }
+    
     public boolean inBounds (int r, int c){
         return !(r<0 || c<0 || r>= rows || c >= cols);
     }
+    
+    /**
+     * @return Cell id of a tile, row*cols + col (see Cells)
+     */
+    public int cell (int r, int c){
+        return Cells.pack(r, c, cols);
+    }
+    
+    public int cellRow (int cell){
+        return Cells.row(cell, cols);
+    }
+    
+    public int cellCol (int cell){
+        return Cells.col(cell, cols);
+    }
 
     /**
      * This will ensure everything is sorted correctly by depth
@@ -336,9 +447,21 @@ public class GameTiles {
      * @return A point of x,y
      */
     public Point tileToXY (int tileX, int tileY){
-        int x = tileX*width + tileY*skewX;
-        int y = tileY*height + tileX*skewY;
-        return new Point(x,y);
+        return new Point(tileToX(tileX,tileY),tileToY(tileX,tileY));
+    }
+    
+    /**
+     * The x of tileToXY, without making a Point
+     */
+    public int tileToX (int tileX, int tileY){
+        return tileX*width + tileY*skewX;
+    }
+    
+    /**
+     * The y of tileToXY, without making a Point
+     */
+    public int tileToY (int tileX, int tileY){
+        return tileY*height + tileX*skewY;
     }
     
     /**
@@ -389,9 +512,8 @@ public class GameTiles {
     
     
     public void realPosition(Tile t){
-        Point pos = tileToXY(t.col, t.row);
-        t.x = pos.x;
-        t.y = pos.y;
+        t.x = tileToX(t.col, t.row);
+        t.y = tileToY(t.col, t.row);
     }
     
     private LinkedList<String> parseFile(String path){
@@ -490,26 +612,14 @@ public class GameTiles {
     }
 
     public void calculateBits(Tile character, Point newPosition) {
-        int x1 = character.col;
-        int y1 = character.row;
-        int x2 = newPosition.x;
-        int y2 = newPosition.y;
-        Point bits = tileToXY(x2-x1,y2-y1);
-        character.bitX = (double) bits.x / Constants.MOVE_TIME;
-        character.bitY = (double) bits.y / Constants.MOVE_TIME;
+        calculateBits(character, newPosition.y, newPosition.x);
     }
-    
-    public boolean[][] wallsAndEnemies (){
-        boolean[][] result = new boolean[rows][cols];
-        for(int i =0;i<walls.length;i++){
-            //clone only does a shallow copy, so need
-            //a for loop too
-            result[i] = walls[i].clone();
-        }
-        
-        for(Tile enemy : model.enemies){
-            result[enemy.row][enemy.col] = true;
-        }
-        return result;
+
+    public void calculateBits(Tile character, int newRow, int newCol) {
+        int dx = newCol - character.col;
+        int dy = newRow - character.row;
+        character.bitX = (double) tileToX(dx,dy) / Constants.MOVE_TIME;
+        character.bitY = (double) tileToY(dx,dy) / Constants.MOVE_TIME;
     }
+
 }
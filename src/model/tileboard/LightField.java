@@ -0,0 +1,168 @@
+package model.tileboard;
+
+/**
+ * The cells of the board a light is shining on, one bit per cell
+ * (row*cols + col), 64 to a long. Asking whether a cell is lit is a bit
+ * test, and copying or combining two fields is a pass over the longs.
+ *
+ * To visit the lit cells in cell order without making anything:
+ *   for(int cell=field.nextLit(0); cell!=-1; cell=field.nextLit(cell+1))
+ */
+public class LightField {
+    private int rows;
+    private int cols;
+    private long[] words;
+
+    /**
+     * Creates a field with nothing lit
+     * @param rows Rows of the board
+     * @param cols Columns of the board
+     */
+    public LightField(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        words = new long[(rows*cols + 63) >>> 6];
+    }
+
+    public int rows(){
+        return rows;
+    }
+
+    public int cols(){
+        return cols;
+    }
+
+    /**
+     * Puts the light out everywhere
+     */
+    public void clear(){
+        for(int i=0;i<words.length;i++){
+            words[i] = 0;
+        }
+    }
+
+    /**
+     * Lights a cell
+     * @param row Row of the cell
+     * @param col Column of the cell
+     */
+    public void light(int row, int col){
+        int cell = row*cols + col;
+        words[cell >>> 6] |= 1L << cell;
+    }
+
+    /**
+     * Puts out everything, then shines a straight beam from a cell. The beam
+     * starts on the next cell over and stops at a wall or the edge.
+     * @param walls The walls, true for wall
+     * @param row Row the beam starts from
+     * @param col Column the beam starts from
+     * @param rowStep Rows moved per cell of beam, -1, 0 or 1
+     * @param colStep Columns moved per cell of beam, -1, 0 or 1
+     * @param length Most cells the beam can light
+     */
+    public void beam(boolean[][] walls, int row, int col, int rowStep, int colStep, int length){
+        clear();
+        for(int i=0;i<length;i++){
+            row += rowStep;
+            col += colStep;
+            if(row < 0 || col < 0 || row >= rows || col >= cols || walls[row][col]){
+                break;
+            }
+            light(row, col);
+        }
+    }
+
+    /**
+     * Is a cell lit? Cells off the board never are.
+     * @param row Row of the cell
+     * @param col Column of the cell
+     */
+    public boolean isLit(int row, int col){
+        if(row < 0 || col < 0 || row >= rows || col >= cols){
+            return false;
+        }
+        return isLit(row*cols + col);
+    }
+
+    /**
+     * Is a cell lit?
+     * @param cell Cell id, row*cols + col
+     */
+    public boolean isLit(int cell){
+        return (words[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    public boolean isEmpty(){
+        for(long word : words){
+            if(word != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of lit cells
+     */
+    public int count(){
+        int count = 0;
+        for(long word : words){
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * The first lit cell at or after a cell, for walking the lit cells
+     * @param cell Cell id to start looking from
+     * @return Cell id of the lit cell, or -1 if there are no more
+     */
+    public int nextLit(int cell){
+        if(cell < 0) cell = 0;
+        int w = cell >>> 6;
+        if(w >= words.length){
+            return -1;
+        }
+        long word = words[w] & (-1L << cell);
+        while(word == 0){
+            if(++w == words.length){
+                return -1;
+            }
+            word = words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Makes this field the same as another one on the same board
+     */
+    public void copyFrom(LightField other){
+        System.arraycopy(other.words, 0, words, 0, words.length);
+    }
+
+    /**
+     * Lights every cell the other field has lit too
+     */
+    public void or(LightField other){
+        for(int i=0;i<words.length;i++){
+            words[i] |= other.words[i];
+        }
+    }
+
+    /**
+     * Keeps lit only the cells the other field has lit too
+     */
+    public void and(LightField other){
+        for(int i=0;i<words.length;i++){
+            words[i] &= other.words[i];
+        }
+    }
+
+    /**
+     * Puts out every cell the other field has lit
+     */
+    public void andNot(LightField other){
+        for(int i=0;i<words.length;i++){
+            words[i] &= ~other.words[i];
+        }
+    }
+}
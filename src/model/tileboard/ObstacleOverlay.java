@@ -0,0 +1,114 @@
+package model.tileboard;
+
+/**
+ * The walls of a board with the cells characters are standing on laid over
+ * them. Instead of copying the walls every time a search needs to treat
+ * enemies as walls, the overlay keeps one combined board for the whole level
+ * and flips single cells of it as characters move.
+ *
+ * board() is that combined board and can be handed straight to any of the
+ * searches, it stays the same array for the life of the overlay.
+ */
+public class ObstacleOverlay {
+    private boolean[][] walls;
+    /** how many characters are standing on each cell */
+    private int[][] occupants;
+    /** walls[r][c] || occupants[r][c] > 0 */
+    private boolean[][] blocked;
+    /** bumped every time a cell of blocked flips */
+    private int version;
+
+    /**
+     * Creates an overlay with no one standing on the board
+     * @param walls The static walls, true for wall. Not copied, and
+     *      should not change while the overlay is in use.
+     */
+    public ObstacleOverlay(boolean[][] walls) {
+        this.walls = walls;
+        int rows = walls.length;
+        int cols = rows > 0 ? walls[0].length : 0;
+        occupants = new int[rows][cols];
+        blocked = new boolean[rows][];
+        for(int i=0;i<rows;i++){
+            //a row at a time, so the overlay's rows are its own and the walls are left alone
+            blocked[i] = walls[i].clone();
+        }
+    }
+
+    /**
+     * Marks a character standing on a cell
+     * @param row Row of the cell
+     * @param col Column of the cell
+     * @return Whether the cell went from open to blocked
+     */
+    public boolean occupy(int row, int col){
+        occupants[row][col]++;
+        return update(row, col);
+    }
+
+    /**
+     * Marks a character leaving a cell. Throws IllegalStateException if no
+     * one is on it, the count would be off for the rest of the level.
+     * @param row Row of the cell
+     * @param col Column of the cell
+     * @return Whether the cell went from blocked to open
+     */
+    public boolean vacate(int row, int col){
+        if(occupants[row][col] == 0){
+            throw new IllegalStateException("No one to leave "+row+","+col);
+        }
+        occupants[row][col]--;
+        return update(row, col);
+    }
+
+    /**
+     * Is a cell a wall or stood on?
+     * @param row Row of the cell
+     * @param col Column of the cell
+     * @return Whether it is blocked
+     */
+    public boolean isBlocked(int row, int col){
+        return blocked[row][col];
+    }
+
+    /**
+     * Is a character standing on a cell?
+     * @param row Row of the cell
+     * @param col Column of the cell
+     * @return Whether it is occupied
+     */
+    public boolean isOccupied(int row, int col){
+        return occupants[row][col] > 0;
+    }
+
+    /**
+     * The walls and the occupied cells together, kept up to date. Treat it
+     * as read only, change it through occupy and vacate.
+     * @return The combined board, true for blocked
+     */
+    public boolean[][] board(){
+        return blocked;
+    }
+
+    /**
+     * Changes every time a cell of the combined board flips, so anything
+     * worked out from the board can tell whether it is still good
+     * @return The current version
+     */
+    public int version(){
+        return version;
+    }
+
+    /**
+     * @return Whether the combined cell changed
+     */
+    private boolean update(int row, int col){
+        boolean now = walls[row][col] || occupants[row][col] > 0;
+        boolean changed = now != blocked[row][col];
+        if(changed){
+            blocked[row][col] = now;
+            version++;
+        }
+        return changed;
+    }
+}
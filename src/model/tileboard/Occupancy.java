@@ -0,0 +1,149 @@
+package model.tileboard;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+
+import model.Tile;
+
+/**
+ * The ducking animations on each cell of the board, so finding the ones
+ * on a cell is a lookup instead of a walk through all of them. The enemies
+ * have their own lookup in EnemyStore.
+ *
+ * Each tile added gets a slot, and the slots on a cell are kept in a list
+ * threaded through per slot arrays, so adding and removing a tile are
+ * both O(1).
+ *
+ * A tile's row and col must not change while it is in here, or the grid
+ * will still have it where it was.
+ */
+public class Occupancy {
+    private int rows;
+    private int cols;
+    /** cell -> first slot standing on it, -1 if none */
+    private int[] head;
+    /** slot -> the slots before and after it on its cell, -1 at the ends */
+    private int[] next;
+    private int[] prev;
+    /** slot -> its cell, or -1 if the slot is free */
+    private int[] cellOf;
+    private Tile[] tiles;
+    /** free slots, a stack */
+    private int[] free;
+    private int freeCount;
+    private Hashtable<Tile, Integer> slots = new Hashtable<Tile, Integer>();
+
+    /**
+     * Creates an empty grid
+     * @param rows Rows of the board
+     * @param cols Columns of the board
+     */
+    public Occupancy(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        head = new int[rows*cols];
+        for(int i=0;i<head.length;i++){
+            head[i] = -1;
+        }
+        next = new int[0];
+        prev = new int[0];
+        cellOf = new int[0];
+        tiles = new Tile[0];
+        free = new int[0];
+        grow(16);
+    }
+
+    /**
+     * Puts a tile on the grid at its row and col
+     * @param t The tile
+     */
+    public void add(Tile t){
+        if(slots.containsKey(t)){
+            throw new IllegalStateException("Already on the grid: "+t);
+        }
+        if(!inBounds(t.row, t.col)){
+            throw new IllegalArgumentException("Off the grid: "+t.row+","+t.col);
+        }
+        if(freeCount == 0){
+            grow(tiles.length*2);
+        }
+        int slot = free[--freeCount];
+        tiles[slot] = t;
+        slots.put(t, slot);
+        link(slot, t.row*cols + t.col);
+    }
+
+    /**
+     * Takes a tile off the grid
+     * @param t The tile
+     * @return Whether it was on it
+     */
+    public boolean remove(Tile t){
+        Integer slot = slots.remove(t);
+        if(slot == null){
+            return false;
+        }
+        unlink(slot);
+        tiles[slot] = null;
+        free[freeCount++] = slot;
+        return true;
+    }
+
+    /**
+     * A tile on a cell
+     * @param row Row of the cell
+     * @param col Column of the cell
+     * @return One of them, or null if there is none
+     */
+    public Tile find(int row, int col){
+        if(!inBounds(row, col)){
+            return null;
+        }
+        int s = head[row*cols + col];
+        return s == -1 ? null : tiles[s];
+    }
+
+    private boolean inBounds(int row, int col){
+        return row >= 0 && col >= 0 && row < rows && col < cols;
+    }
+
+    private void link(int slot, int cell){
+        cellOf[slot] = cell;
+        prev[slot] = -1;
+        next[slot] = head[cell];
+        if(head[cell] != -1){
+            prev[head[cell]] = slot;
+        }
+        head[cell] = slot;
+    }
+
+    private void unlink(int slot){
+        int cell = cellOf[slot];
+        if(prev[slot] == -1){
+            head[cell] = next[slot];
+        }else{
+            next[prev[slot]] = next[slot];
+        }
+        if(next[slot] != -1){
+            prev[next[slot]] = prev[slot];
+        }
+        cellOf[slot] = -1;
+    }
+
+    /**
+     * Makes room for more slots, the new ones are free
+     */
+    private void grow(int size){
+        int old = tiles.length;
+        next = Arrays.copyOf(next, size);
+        prev = Arrays.copyOf(prev, size);
+        cellOf = Arrays.copyOf(cellOf, size);
+        free = Arrays.copyOf(free, size);
+        tiles = Arrays.copyOf(tiles, size);
+        //hand out the lowest slots first
+        for(int s=size-1;s>=old;s--){
+            cellOf[s] = -1;
+            free[freeCount++] = s;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package model.tileboard;
+
+import java.util.Arrays;
+
+/**
+ * Things on the board sorted into square buckets of cells, so finding the
+ * ones in an area only looks at the buckets it covers, however many there
+ * are elsewhere on the board.
+ *
+ * Things are numbered by the caller, 0 up to the capacity, e.g. their place
+ * in a list. Each bucket's things are kept in a list threaded through per
+ * thing arrays, so adding and moving one is O(1).
+ */
+public class SpatialHash {
+    private int rows;
+    private int cols;
+    private int size;
+    private int bucketCols;
+    /** bucket -> first thing in it, -1 if none */
+    private int[] head;
+    /** thing -> the things before and after it in its bucket, -1 at the ends */
+    private int[] next;
+    private int[] prev;
+    /** thing -> where it is, bucket -1 if it isn't in the hash */
+    private int[] row;
+    private int[] col;
+    private int[] bucket;
+
+    /**
+     * Creates an empty hash
+     * @param rows Rows of the board
+     * @param cols Columns of the board
+     * @param size Side of a bucket in cells
+     * @param capacity Things are numbered 0 up to this
+     */
+    public SpatialHash(int rows, int cols, int size, int capacity) {
+        this.rows = rows;
+        this.cols = cols;
+        this.size = Math.max(1, size);
+        bucketCols = (cols + this.size - 1) / this.size;
+        int bucketRows = (rows + this.size - 1) / this.size;
+        head = new int[bucketRows*bucketCols];
+        next = new int[capacity];
+        prev = new int[capacity];
+        row = new int[capacity];
+        col = new int[capacity];
+        bucket = new int[capacity];
+        clear();
+    }
+
+    /**
+     * Takes everything out
+     */
+    public void clear(){
+        Arrays.fill(head, -1);
+        Arrays.fill(bucket, -1);
+    }
+
+    /**
+     * Puts a thing in, or moves it if it is in already
+     * @param id Its number
+     * @param row Row of its cell
+     * @param col Column of its cell
+     */
+    public void put(int id, int row, int col){
+        if(row < 0 || col < 0 || row >= rows || col >= cols){
+            System.err.println("Off the board: "+id+" at "+row+","+col);
+            return;
+        }
+        this.row[id] = row;
+        this.col[id] = col;
+        int b = (row/size)*bucketCols + col/size;
+        if(bucket[id] == b){
+            return;
+        }
+        if(bucket[id] != -1){
+            unlink(id);
+        }
+        bucket[id] = b;
+        prev[id] = -1;
+        next[id] = head[b];
+        if(head[b] != -1){
+            prev[head[b]] = id;
+        }
+        head[b] = id;
+    }
+
+    /**
+     * Finds the things in a block of cells. Bounds past the edge of the
+     * board are fine.
+     * @param minRow First row of the block
+     * @param maxRow Last row of the block
+     * @param minCol First column of the block
+     * @param maxCol Last column of the block
+     * @param out Filled with the numbers of the things found, smallest
+     *      first. Must have room for all of them.
+     * @return How many were found
+     */
+    public int query(int minRow, int maxRow, int minCol, int maxCol, int[] out){
+        minRow = Math.max(minRow, 0);
+        minCol = Math.max(minCol, 0);
+        maxRow = Math.min(maxRow, rows-1);
+        maxCol = Math.min(maxCol, cols-1);
+        int count = 0;
+        for(int br=minRow/size;br<=maxRow/size && minRow<=maxRow;br++){
+            for(int bc=minCol/size;bc<=maxCol/size && minCol<=maxCol;bc++){
+                for(int id=head[br*bucketCols + bc];id!=-1;id=next[id]){
+                    if(row[id] >= minRow && row[id] <= maxRow && col[id] >= minCol && col[id] <= maxCol){
+                        out[count++] = id;
+                    }
+                }
+            }
+        }
+        Arrays.sort(out, 0, count);
+        return count;
+    }
+
+    private void unlink(int id){
+        int b = bucket[id];
+        if(prev[id] == -1){
+            head[b] = next[id];
+        }else{
+            next[prev[id]] = next[id];
+        }
+        if(next[id] != -1){
+            prev[next[id]] = prev[id];
+        }
+        bucket[id] = -1;
+    }
+}
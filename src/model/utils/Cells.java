@@ -0,0 +1,23 @@
+package model.utils;
+
+/**
+ * A cell of the board packed into one int, row*cols + col, the same ids the
+ * pathfinding hands back. Passing these around instead of Points means the
+ * turn code doesn't make a new object every time it names a cell.
+ */
+public class Cells {
+    /** no cell, e.g. no next hop */
+    public static final int NONE = -1;
+
+    public static int pack(int row, int col, int cols){
+        return row*cols + col;
+    }
+
+    public static int row(int cell, int cols){
+        return cell / cols;
+    }
+
+    public static int col(int cell, int cols){
+        return cell % cols;
+    }
+}
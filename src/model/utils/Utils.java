@@ -43,23 +43,6 @@ public class Utils {
         a.set(j, tmp);
     }
     
-    public static boolean isInList(Tile t, ArrayList<Point> lst) {
-        boolean result = false;
-        for(Point p : lst){
-            if(t.row == p.y && t.col == p.x) result = true;
-        }
-        return result;
-    }
-    
-    
-    public static boolean isInList(Point point, ArrayList<Point> lst) {
-        boolean result = false;
-        for(Point p : lst){
-            if(point.y == p.y && point.x == p.x) result = true;
-        }
-        return result;
-    }
-    
     public static boolean isInTileList(Tile t, ArrayList<Tile> lst) {
         boolean result = false;
         for(Tile t2 : lst){